@@ -14,6 +14,29 @@ dependencies {
     testImplementation("org.junit.jupiter:junit-jupiter")
 }
 
+// The lexer can scan with jdk.incubator.vector when plc.vector is set (see CharScanner).
+tasks.withType<JavaCompile> {
+    options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
+}
+
 tasks.test {
     useJUnitPlatform()
+}
+
+// The main tests use the default scalar scanner, so run the lexer tests again with vectors.
+val vectorTest by tasks.registering(Test::class) {
+    description = "Runs the lexer tests with the vectorized CharScanner."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform()
+    jvmArgs("--add-modules", "jdk.incubator.vector")
+    systemProperty("plc.vector", "true")
+    filter {
+        includeTestsMatching("plc.project.LexerTests")
+    }
+}
+
+tasks.check {
+    dependsOn(vectorTest)
 }
\ No newline at end of file
@@ -116,8 +116,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
         Environment.Type returnType = Environment.getType(
                 ast.getReturnTypeName().orElse(NIL_TYPE_NAME)
         );
-        scope.defineFunction(ast.getName(), ast.getName(), paramTypes, returnType, args -> Environment.NIL);
-        ast.setFunction(scope.lookupFunction(ast.getName(), ast.getParameters().size()));
+        ast.setFunction(scope.defineFunction(ast.getName(), ast.getName(), paramTypes, returnType, args -> Environment.NIL));
     }
 
     private void defineParameters(Ast.Method ast) {
@@ -155,8 +154,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
     @Override
     public Void visit(Ast.Statement.Declaration ast) {
         Environment.Type type = determineDeclarationType(ast);
-        scope.defineVariable(ast.getName(), ast.getName(), type, false, Environment.NIL);
-        ast.setVariable(scope.lookupVariable(ast.getName()));
+        ast.setVariable(scope.defineVariable(ast.getSymbol(), ast.getName(), type, false, Environment.NIL));
         return null;
     }
 
@@ -267,19 +265,64 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
     @Override
     public Void visit(Ast.Expression.Group ast) {
-        if (!(ast.getExpression() instanceof Ast.Expression.Binary)) {
-            throw new RuntimeException("The grouped expression is not binary.");
-        }
-        visit(ast.getExpression());
-        ast.setType(ast.getExpression().getType());
+        visitNested(ast);
         return null;
     }
 
     @Override
     public Void visit(Ast.Expression.Binary ast) {
-        visit(ast.getLeft());
-        visit(ast.getRight());
+        visitNested(ast);
+        return null;
+    }
 
+    /**
+     * Visits nested binary and group expressions with an explicit stack
+     * instead of recursion, so long chains of operators and deeply nested
+     * groups do not overflow the Java stack. Other expressions are visited
+     * as usual, and in the same order as recursing.
+     */
+    private void visitNested(Ast.Expression expression) {
+        List<Ast.Expression> nodes = new ArrayList<>();
+        List<Boolean> visitedLeft = new ArrayList<>();
+        Ast.Expression current = expression;
+        while (true) {
+            while (current instanceof Ast.Expression.Binary || current instanceof Ast.Expression.Group) {
+                if (current instanceof Ast.Expression.Group
+                        && !(((Ast.Expression.Group) current).getExpression() instanceof Ast.Expression.Binary)) {
+                    throw new RuntimeException("The grouped expression is not binary.");
+                }
+                nodes.add(current);
+                visitedLeft.add(false);
+                current = current instanceof Ast.Expression.Binary
+                        ? ((Ast.Expression.Binary) current).getLeft()
+                        : ((Ast.Expression.Group) current).getExpression();
+            }
+            visit(current);
+            while (true) {
+                if (nodes.isEmpty()) {
+                    return;
+                }
+                int top = nodes.size() - 1;
+                if (nodes.get(top) instanceof Ast.Expression.Binary && !visitedLeft.get(top)) {
+                    visitedLeft.set(top, true);
+                    current = ((Ast.Expression.Binary) nodes.get(top)).getRight();
+                    break;
+                } else if (nodes.get(top) instanceof Ast.Expression.Binary) {
+                    analyze((Ast.Expression.Binary) nodes.get(top));
+                } else {
+                    Ast.Expression.Group group = (Ast.Expression.Group) nodes.get(top);
+                    group.setType(group.getExpression().getType());
+                }
+                nodes.remove(top);
+                visitedLeft.remove(top);
+            }
+        }
+    }
+
+    /**
+     * Sets the type of a binary expression after both sides are visited.
+     */
+    private void analyze(Ast.Expression.Binary ast) {
         switch (ast.getOperator()) {
             case "&&":
             case "||":
@@ -303,7 +346,6 @@ public final class Analyzer implements Ast.Visitor<Void> {
                 handleExponentialOperator(ast);
                 break;
         }
-        return null;
     }
 
     private void handleLogicalOperator(Ast.Expression.Binary ast) {
@@ -372,7 +414,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
             Environment.Type receiverType = ast.getReceiver().get().getType();
 
             // Attempt to resolve the field by its name
-            Environment.Variable field = receiverType.getField(ast.getName());
+            Environment.Variable field = receiverType.getField(ast.getSymbol());
             if (field == null) {
                 throw new RuntimeException("Field '" + ast.getName() + "' does not exist in receiver type.");
             }
@@ -381,7 +423,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
             ast.setVariable(field);
         } else {
             // Simple variable access (e.g., variable)
-            ast.setVariable(scope.lookupVariable(ast.getName()));
+            ast.setVariable(scope.lookupVariable(ast.getSymbol()));
         }
         return null;
     }
@@ -399,7 +441,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
             Environment.Type receiverType = receiver.getType();
 
             // Lookup the method in the receiver's type
-            Environment.Function method = receiverType.getFunction(ast.getName(), ast.getArguments().size());
+            Environment.Function method = receiverType.getFunction(ast.getSymbol(), ast.getArguments().size());
             if (method == null) {
                 throw new RuntimeException("Method '" + ast.getName() + "' does not exist in receiver type.");
             }
@@ -408,7 +450,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
             ast.setFunction(method);
         } else {
             // No receiver (e.g., function())
-            ast.setFunction(scope.lookupFunction(ast.getName(), ast.getArguments().size()));
+            ast.setFunction(scope.lookupFunction(ast.getSymbol(), ast.getArguments().size()));
         }
 
         // Validate function arguments
@@ -1,9 +1,11 @@
 package plc.project;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * See each project assignment specification for specific notes on the AST classes
@@ -11,6 +13,12 @@ import java.util.Optional;
  */
 public abstract class Ast {
 
+    /**
+     * Calls the {@code visit} method of the visitor for this node's class,
+     * which {@link Visitor#visit(Ast)} uses to dispatch in constant time.
+     */
+    public abstract <T> T accept(Visitor<T> visitor);
+
     public static final class Source extends Ast {
 
         private final List<Field> fields;
@@ -29,6 +37,11 @@ public abstract class Ast {
             return methods;
         }
 
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Source &&
@@ -94,6 +107,11 @@ public abstract class Ast {
         }
 
 
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Field &&
@@ -123,9 +141,10 @@ public abstract class Ast {
         private final List<String> parameters;
         private final List<String> parameterTypeNames;
         private final Optional<String> returnTypeName;
-        private final List<Statement> statements;
+        private List<Statement> statements;
+        private volatile Supplier<List<Statement>> body; // parses the statements on first access
         private Environment.Function function = null;
-        
+
         public Method(String name, List<String> parameters, List<Statement> statements) {
             this(name, parameters, new ArrayList<>(), Optional.of("Any"), statements);
             for (int i = 0; i < parameters.size(); i++) {
@@ -142,6 +161,17 @@ public abstract class Ast {
             this.statements = statements;
         }
 
+        /**
+         * Creates a method whose statements are parsed by {@code body} the
+         * first time they are needed, as by {@link Parser#parseSourceLazy()}.
+         * Any {@link ParseException} in the body is thrown from {@link
+         * #getStatements()}.
+         */
+        public Method(String name, List<String> parameters, List<String> parameterTypeNames, Optional<String> returnTypeName, Supplier<List<Statement>> body) {
+            this(name, parameters, parameterTypeNames, returnTypeName, (List<Statement>) null);
+            this.body = body;
+        }
+
         public String getName() {
             return name;
         }
@@ -159,9 +189,25 @@ public abstract class Ast {
         }
 
         public List<Statement> getStatements() {
+            if (body != null) {
+                synchronized (this) {
+                    if (body != null) {
+                        statements = body.get();
+                        body = null;
+                    }
+                }
+            }
             return statements;
         }
 
+        /**
+         * Returns true if the statements have been parsed, which is always the
+         * case unless the method was parsed lazily.
+         */
+        public boolean isParsed() {
+            return body == null;
+        }
+
         public Environment.Function getFunction() {
             if (function == null) {
                 throw new IllegalStateException("function is uninitialized");
@@ -174,6 +220,11 @@ public abstract class Ast {
         }
 
 
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Ast.Method &&
@@ -181,7 +232,7 @@ public abstract class Ast {
                     parameters.equals(((Ast.Method) obj).parameters) &&
                     parameterTypeNames.equals(((Ast.Method) obj).parameterTypeNames) &&
                     returnTypeName.equals(((Ast.Method) obj).returnTypeName) &&
-                    statements.equals(((Ast.Method) obj).statements) &&
+                    getStatements().equals(((Ast.Method) obj).getStatements()) &&
                     Objects.equals(function, ((Ast.Method) obj).function);
         }
 
@@ -193,7 +244,7 @@ public abstract class Ast {
                     ", parameters=" + parameters +
                     ", parameterTypeNames=" + parameterTypeNames +
                     ", returnTypeName='" + returnTypeName + '\'' +
-                    ", statements=" + statements +
+                    ", statements=" + getStatements() +
                     ", function=" + function +
                     '}';
         }
@@ -214,6 +265,11 @@ public abstract class Ast {
                 return expression;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Ast.Statement.Expression &&
@@ -232,6 +288,7 @@ public abstract class Ast {
         public static final class Declaration extends Statement {
 
             private String name;
+            private final int symbol;
             private final Optional<String> typeName;
             private Optional<Ast.Expression> value;
             private Environment.Variable variable = null;
@@ -241,7 +298,16 @@ public abstract class Ast {
             }
 
             public Declaration(String name, Optional<String> typeName, Optional<Ast.Expression> value) {
+                this(name, Symbols.intern(name), typeName, value);
+            }
+
+            /**
+             * Creates a declaration with the {@link Symbols} id of its name,
+             * as the parser does from the identifier token.
+             */
+            public Declaration(String name, int symbol, Optional<String> typeName, Optional<Ast.Expression> value) {
                 this.name = name;
+                this.symbol = symbol;
                 this.typeName = typeName;
                 this.value = value;
             }
@@ -250,6 +316,13 @@ public abstract class Ast {
                 return name;
             }
 
+            /**
+             * Returns the {@link Symbols} id of the name.
+             */
+            public int getSymbol() {
+                return symbol;
+            }
+
             public Optional<String> getTypeName() {
                 return typeName;
             }
@@ -270,6 +343,11 @@ public abstract class Ast {
             }
             
             
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Declaration &&
@@ -309,6 +387,11 @@ public abstract class Ast {
                 return value;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Assignment &&
@@ -351,6 +434,11 @@ public abstract class Ast {
                 return elseStatements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof If &&
@@ -400,6 +488,11 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
 
@@ -460,6 +553,11 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof While &&
@@ -489,6 +587,11 @@ public abstract class Ast {
                 return value;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Return &&
@@ -535,6 +638,11 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Literal &&
@@ -578,20 +686,20 @@ public abstract class Ast {
             }
 
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Group &&
-                        expression.equals(((Group) obj).expression) &&
-                        Objects.equals(type, ((Group) obj).type);
+                return nestedEquals(this, obj);
             }
 
 
             @Override
             public String toString() {
-                return "Ast.Expression.Group{" +
-                        "expression=" + expression +
-                        ", type=" + type +
-                        '}';
+                return nestedToString(this);
             }
 
         }
@@ -633,37 +741,95 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Binary &&
-                        operator.equals(((Binary) obj).operator) &&
-                        left.equals(((Binary) obj).left) &&
-                        right.equals(((Binary) obj).right) &&
-                        Objects.equals(type, ((Binary) obj).type);
+                return nestedEquals(this, obj);
             }
 
             @Override
             public String toString() {
-                return "Ast.Expression.Binary{" +
-                        "operator='" + operator + '\'' +
-                        ", left=" + left +
-                        ", right=" + right +
-                        ", type=" + type +
-                        '}';
+                return nestedToString(this);
             }
 
         }
 
+        /**
+         * Compares nested binary and group expressions with an explicit stack
+         * instead of recursion, so long chains of operators and deeply nested
+         * groups do not overflow the Java stack.
+         */
+        private static boolean nestedEquals(Ast.Expression expression, Object obj) {
+            List<Object> pending = new ArrayList<>(Arrays.asList(expression, obj)); // pairs to compare
+            while (!pending.isEmpty()) {
+                Object first = pending.remove(pending.size() - 2);
+                Object second = pending.remove(pending.size() - 1);
+                if (first instanceof Binary) {
+                    if (!(second instanceof Binary)
+                            || !((Binary) first).operator.equals(((Binary) second).operator)
+                            || !Objects.equals(((Binary) first).type, ((Binary) second).type)) {
+                        return false;
+                    }
+                    pending.addAll(Arrays.asList(((Binary) first).right, ((Binary) second).right));
+                    pending.addAll(Arrays.asList(((Binary) first).left, ((Binary) second).left));
+                } else if (first instanceof Group) {
+                    if (!(second instanceof Group) || !Objects.equals(((Group) first).type, ((Group) second).type)) {
+                        return false;
+                    }
+                    pending.addAll(Arrays.asList(((Group) first).expression, ((Group) second).expression));
+                } else if (!first.equals(second)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Prints nested binary and group expressions with an explicit stack,
+         * like {@link #nestedEquals(Ast.Expression, Object)}.
+         */
+        private static String nestedToString(Ast.Expression expression) {
+            StringBuilder builder = new StringBuilder();
+            List<Object> pending = new ArrayList<>(List.of(expression)); // text and expressions to print, in reverse
+            while (!pending.isEmpty()) {
+                Object next = pending.remove(pending.size() - 1);
+                if (next instanceof Binary) {
+                    builder.append("Ast.Expression.Binary{operator='").append(((Binary) next).operator).append("', left=");
+                    pending.addAll(Arrays.asList(", type=" + ((Binary) next).type + '}', ((Binary) next).right, ", right=", ((Binary) next).left));
+                } else if (next instanceof Group) {
+                    builder.append("Ast.Expression.Group{expression=");
+                    pending.addAll(Arrays.asList(", type=" + ((Group) next).type + '}', ((Group) next).expression));
+                } else {
+                    builder.append(next);
+                }
+            }
+            return builder.toString();
+        }
+
 
         public static final class Access extends Ast.Expression {
 
             private final Optional<Ast.Expression> receiver;
             private final String name;
+            private final int symbol;
             private Environment.Variable variable = null;
 
             public Access(Optional<Ast.Expression> receiver, String name) {
+                this(receiver, name, Symbols.intern(name));
+            }
+
+            /**
+             * Creates an access with the {@link Symbols} id of its name, as
+             * the parser does from the identifier token.
+             */
+            public Access(Optional<Ast.Expression> receiver, String name, int symbol) {
                 this.receiver = receiver;
                 this.name = name;
+                this.symbol = symbol;
             }
 
             public Optional<Ast.Expression> getReceiver() {
@@ -674,6 +840,13 @@ public abstract class Ast {
                 return name;
             }
 
+            /**
+             * Returns the {@link Symbols} id of the name.
+             */
+            public int getSymbol() {
+                return symbol;
+            }
+
             public Environment.Variable getVariable() {
                 if (variable == null) {
                     throw new IllegalStateException("variable is uninitialized");
@@ -690,6 +863,11 @@ public abstract class Ast {
                 return getVariable().getType();
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Access &&
@@ -714,12 +892,22 @@ public abstract class Ast {
 
             private final Optional<Ast.Expression> receiver;
             private final String name;
+            private final int symbol;
             private final List<Ast.Expression> arguments;
             private Environment.Function function = null;
 
             public Function(Optional<Ast.Expression> receiver, String name, List<Ast.Expression> arguments) {
+                this(receiver, name, Symbols.intern(name), arguments);
+            }
+
+            /**
+             * Creates a call with the {@link Symbols} id of its name, as the
+             * parser does from the identifier token.
+             */
+            public Function(Optional<Ast.Expression> receiver, String name, int symbol, List<Ast.Expression> arguments) {
                 this.receiver = receiver;
                 this.name = name;
+                this.symbol = symbol;
                 this.arguments = arguments;
             }
 
@@ -731,6 +919,13 @@ public abstract class Ast {
                 return name;
             }
 
+            /**
+             * Returns the {@link Symbols} id of the name.
+             */
+            public int getSymbol() {
+                return symbol;
+            }
+
             public List<Ast.Expression> getArguments() {
                 return arguments;
             }
@@ -751,6 +946,11 @@ public abstract class Ast {
                 return getFunction().getReturnType();
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Ast.Expression.Function &&
@@ -774,42 +974,60 @@ public abstract class Ast {
 
     }
 
+    /**
+     * Returns the variable, function, or type the {@link Analyzer} set on a
+     * node, or {@code null} if there is none, without throwing like the
+     * getters do when it is uninitialized.
+     */
+    static Object getAnnotation(Ast ast) {
+        if (ast instanceof Field) {
+            return ((Field) ast).variable;
+        } else if (ast instanceof Method) {
+            return ((Method) ast).function;
+        } else if (ast instanceof Statement.Declaration) {
+            return ((Statement.Declaration) ast).variable;
+        } else if (ast instanceof Expression.Literal) {
+            return ((Expression.Literal) ast).type;
+        } else if (ast instanceof Expression.Group) {
+            return ((Expression.Group) ast).type;
+        } else if (ast instanceof Expression.Binary) {
+            return ((Expression.Binary) ast).type;
+        } else if (ast instanceof Expression.Access) {
+            return ((Expression.Access) ast).variable;
+        } else if (ast instanceof Expression.Function) {
+            return ((Expression.Function) ast).function;
+        }
+        return null;
+    }
+
+    /**
+     * Sets the variable, function, or type of a node, the inverse of
+     * {@link #getAnnotation(Ast)}.
+     */
+    static void setAnnotation(Ast ast, Object annotation) {
+        if (ast instanceof Field) {
+            ((Field) ast).variable = (Environment.Variable) annotation;
+        } else if (ast instanceof Method) {
+            ((Method) ast).function = (Environment.Function) annotation;
+        } else if (ast instanceof Statement.Declaration) {
+            ((Statement.Declaration) ast).variable = (Environment.Variable) annotation;
+        } else if (ast instanceof Expression.Literal) {
+            ((Expression.Literal) ast).type = (Environment.Type) annotation;
+        } else if (ast instanceof Expression.Group) {
+            ((Expression.Group) ast).type = (Environment.Type) annotation;
+        } else if (ast instanceof Expression.Binary) {
+            ((Expression.Binary) ast).type = (Environment.Type) annotation;
+        } else if (ast instanceof Expression.Access) {
+            ((Expression.Access) ast).variable = (Environment.Variable) annotation;
+        } else if (ast instanceof Expression.Function) {
+            ((Expression.Function) ast).function = (Environment.Function) annotation;
+        }
+    }
+
     public interface Visitor<T> {
 
         default T visit(Ast ast) {
-            if (ast instanceof Ast.Source) {
-                return visit((Ast.Source) ast);
-            } else if (ast instanceof Ast.Field) {
-                return visit((Ast.Field) ast);
-            } else if (ast instanceof Ast.Method) {
-                return visit((Ast.Method) ast);
-            } else if (ast instanceof Ast.Statement.Expression) {
-                return visit((Ast.Statement.Expression) ast);
-            } else if (ast instanceof Ast.Statement.Declaration) {
-                return visit((Ast.Statement.Declaration) ast);
-            } else if (ast instanceof Ast.Statement.Assignment) {
-                return visit((Ast.Statement.Assignment) ast);
-            } else if (ast instanceof Ast.Statement.If) {
-                return visit((Ast.Statement.If) ast);
-            } else if (ast instanceof Ast.Statement.For) {
-                return visit((Ast.Statement.For) ast);
-            } else if (ast instanceof Ast.Statement.While) {
-                return visit((Ast.Statement.While) ast);
-            } else if (ast instanceof Ast.Statement.Return) {
-                return visit((Ast.Statement.Return) ast);
-            } else if (ast instanceof Ast.Expression.Literal) {
-                return visit((Ast.Expression.Literal) ast);
-            } else if (ast instanceof Ast.Expression.Group) {
-                return visit((Ast.Expression.Group) ast);
-            } else if (ast instanceof Ast.Expression.Binary) {
-                return visit((Ast.Expression.Binary) ast);
-            } else if (ast instanceof Ast.Expression.Access) {
-                return visit((Ast.Expression.Access) ast);
-            } else if (ast instanceof Ast.Expression.Function) {
-                return visit((Ast.Expression.Function) ast);
-            } else {
-                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
-            }
+            return ast.accept(this);
         }
 
         T visit(Ast.Source ast);
@@ -0,0 +1,67 @@
+package plc.project;
+
+/**
+ * Finds the end of a run of characters of one kind, which lets the lexer skip
+ * whitespace and scan identifiers and string bodies without going through
+ * {@link Lexer.CharStream} one character at a time. The kinds must agree with
+ * the character classes in {@link Lexer}.
+ *
+ * This implementation is scalar. With the {@code plc.vector} system property
+ * set to {@code true}, {@link #INSTANCE} is a {@link VectorCharScanner}
+ * instead, provided the {@code jdk.incubator.vector} module is available (as
+ * with {@code --add-modules jdk.incubator.vector}). Vectors only pay off for
+ * runs of more than a few dozen characters, and a string input has to be
+ * copied into an array for them, so they are not used by default.
+ */
+class CharScanner {
+
+    static final int WHITESPACE = 0;
+    static final int IDENTIFIER = 1; // characters after the start of an identifier
+    static final int STRING = 2; // characters in a string other than '"', '\', and newlines
+
+    static final CharScanner INSTANCE = load();
+
+    /**
+     * Returns the index of the first character between {@code from} and
+     * {@code to} which is not of the given kind, or {@code to} if there is
+     * none.
+     */
+    int skip(int kind, char[] chars, int from, int to) {
+        int i = from;
+        while (i < to && matches(kind, chars[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns true if {@link #skip} works on several characters at once, in
+     * which case it is worth copying a string into an array to use it.
+     */
+    boolean isVectorized() {
+        return false;
+    }
+
+    static boolean matches(int kind, char c) {
+        switch (kind) {
+            case WHITESPACE:
+                return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\b';
+            case IDENTIFIER:
+                return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+            default:
+                return c != '"' && c != '\\' && c != '\n';
+        }
+    }
+
+    private static CharScanner load() {
+        if (Boolean.getBoolean("plc.vector") && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (CharScanner) Class.forName("plc.project.VectorCharScanner").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Fall back to the scalar scanner below
+            }
+        }
+        return new CharScanner();
+    }
+
+}
@@ -0,0 +1,466 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Computes binary expressions and field accesses which are repeated within a
+ * block once, in a synthetic local declared before their first use, and
+ * replaces the repeats with the local.
+ *
+ * Only the expression evaluated first by each statement is considered: the
+ * value of a declaration, assignment, return, or expression statement, and
+ * the condition of an {@code IF}. An expression is pure if it calls no
+ * function, since the {@link Analyzer} knows nothing about the effects of an
+ * {@link Environment.Function}, and it is hoisted only if its first use is
+ * evaluated unconditionally and before any call, so both back ends evaluate
+ * it at the same point as before. Repeats are replaced until a statement
+ * assigns or declares a variable or field the expression reads; a call also
+ * ends the repeats of an expression which reads fields, since the called
+ * method may assign them. The body of a {@code FOR} is run in a single scope
+ * by the Interpreter, so nothing is declared there.
+ */
+public final class CommonSubexpressionElimination extends Pass {
+
+    private final Set<String> names = new HashSet<>(); // every name in the source, to choose fresh names
+    private final Set<String> fields = new HashSet<>();
+    private Set<String> locals = Set.of(); // the parameters and locals of the method being rewritten
+    private boolean loopBody = false; // whether the next block is the body of a FOR
+
+    @Override
+    public String getName() {
+        return "common-subexpression-elimination";
+    }
+
+    @Override
+    public Ast visit(Ast.Source ast) {
+        names.clear();
+        fields.clear();
+        Effects effects = new Effects();
+        for (Ast.Field field : ast.getFields()) {
+            fields.add(field.getName());
+            names.add(field.getName());
+            effects.visit(field);
+        }
+        for (Ast.Method method : ast.getMethods()) {
+            names.add(method.getName());
+            names.addAll(method.getParameters());
+            effects.visit(method);
+        }
+        names.addAll(effects.reads);
+        names.addAll(effects.declarations);
+        return super.visit(ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Method ast) {
+        Effects effects = new Effects();
+        effects.visit(ast);
+        locals = new HashSet<>(ast.getParameters());
+        locals.addAll(effects.declarations);
+        locals.removeAll(fields); // the name may still refer to the field before it is declared
+        return super.visit(ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.For ast) {
+        loopBody = true;
+        try {
+            return super.visit(ast);
+        } finally {
+            loopBody = false;
+        }
+    }
+
+    @Override
+    protected List<Ast.Statement> visitStatements(List<Ast.Statement> statements) {
+        boolean declare = !loopBody;
+        loopBody = false;
+        List<Ast.Statement> result = super.visitStatements(statements);
+        if (!declare) {
+            return result;
+        }
+        List<Ast.Statement> rewritten = new ArrayList<>(result);
+        boolean hoisted = false;
+        while (eliminate(rewritten)) {
+            hoisted = true;
+        }
+        return hoisted ? rewritten : result;
+    }
+
+    /**
+     * The size, hash, and whether it calls a function of an expression.
+     */
+    private static final class Info {
+
+        private int size = 1;
+        private int hash;
+        private boolean call;
+
+    }
+
+    /**
+     * Hoists the largest repeated expression in a block, returning whether
+     * there was one.
+     */
+    private boolean eliminate(List<Ast.Statement> statements) {
+        Map<Ast.Expression, Info> infos = new IdentityHashMap<>();
+        Map<Ast.Expression, Integer> positions = new IdentityHashMap<>(); // the statement of each candidate
+        Map<Integer, List<Ast.Expression>> groups = new LinkedHashMap<>(); // candidates by hash
+        for (int i = 0; i < statements.size(); i++) {
+            Ast.Expression value = getValue(statements.get(i));
+            if (value != null) {
+                for (Ast.Expression node : index(value, infos)) {
+                    if (isCandidate(node, infos.get(node))) {
+                        positions.put(node, i);
+                        groups.computeIfAbsent(infos.get(node).hash, hash -> new ArrayList<>()).add(node);
+                    }
+                }
+            }
+        }
+        List<Ast.Expression> candidates = new ArrayList<>();
+        for (List<Ast.Expression> group : groups.values()) {
+            if (group.size() > 1) {
+                candidates.addAll(group);
+            }
+        }
+        candidates.sort(Comparator.comparingInt((Ast.Expression node) -> -infos.get(node).size)
+                .thenComparingInt(positions::get));
+        for (Ast.Expression candidate : candidates) {
+            Map<Integer, List<Ast.Expression>> occurrences = findRepeats(statements, positions.get(candidate), candidate);
+            if (occurrences != null) {
+                hoist(statements, positions.get(candidate), candidate, occurrences);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isCandidate(Ast.Expression node, Info info) {
+        if (info.call || Ast.getAnnotation(node) == null) {
+            return false;
+        }
+        return node instanceof Ast.Expression.Binary
+                || node instanceof Ast.Expression.Access && ((Ast.Expression.Access) node).getReceiver().isPresent();
+    }
+
+    /**
+     * Returns the uses of an expression to replace, by statement, if it is
+     * first used unconditionally in the given statement and used more than
+     * once, or {@code null} otherwise.
+     */
+    private Map<Integer, List<Ast.Expression>> findRepeats(List<Ast.Statement> statements, int start, Ast.Expression expression) {
+        Effects reads = new Effects();
+        reads.visit(expression);
+        boolean readsFields = !reads.fields.isEmpty() || !locals.containsAll(reads.reads);
+        Map<Integer, List<Ast.Expression>> occurrences = new HashMap<>();
+        int count = 0;
+        for (int i = start; i < statements.size(); i++) {
+            Ast.Expression value = getValue(statements.get(i));
+            List<Ast.Expression> found = new ArrayList<>();
+            boolean call = false;
+            if (value != null) {
+                List<Occurrence> all = find(value, expression);
+                if (i == start && (all.isEmpty() || all.get(0).conditional || all.get(0).afterCall)) {
+                    return null;
+                }
+                for (Occurrence occurrence : all) {
+                    if (!readsFields || !occurrence.afterCall) {
+                        found.add(occurrence.node);
+                    }
+                }
+                call = readsFields && containsCall(value);
+            }
+            if (!found.isEmpty()) {
+                occurrences.put(i, found);
+                count += found.size();
+            }
+            Effects effects = new Effects();
+            effects.visit(statements.get(i));
+            if (call || readsFields && effects.call
+                    || !Collections.disjoint(effects.assignments, reads.reads)
+                    || !Collections.disjoint(effects.declarations, reads.reads)
+                    || !Collections.disjoint(effects.fieldAssignments, reads.fields)
+                    || statements.get(i) instanceof Ast.Statement.Return) {
+                break;
+            }
+        }
+        return count > 1 ? occurrences : null;
+    }
+
+    private void hoist(List<Ast.Statement> statements, int start, Ast.Expression expression, Map<Integer, List<Ast.Expression>> occurrences) {
+        String name = fresh();
+        Ast.Expression.Access access = new Ast.Expression.Access(Optional.empty(), name);
+        access.setVariable(new Environment.Variable(name, name, expression.getType(), false, Environment.NIL));
+        for (Map.Entry<Integer, List<Ast.Expression>> entry : occurrences.entrySet()) {
+            Set<Ast.Expression> replaced = Collections.newSetFromMap(new IdentityHashMap<>());
+            replaced.addAll(entry.getValue());
+            Ast.Statement statement = statements.get(entry.getKey());
+            Ast.Expression value = (Ast.Expression) new Replacement(replaced, access).visit(getValue(statement));
+            statements.set(entry.getKey(), withValue(statement, value));
+            entry.getValue().forEach(this::changed);
+        }
+        Ast.Statement.Declaration declaration = new Ast.Statement.Declaration(name, Optional.empty(), Optional.of(expression));
+        declaration.setVariable(new Environment.Variable(name, name, expression.getType(), false, Environment.NIL));
+        statements.add(start, declaration);
+    }
+
+    private String fresh() {
+        for (int i = 1; ; i++) {
+            if (names.add("cse_" + i)) {
+                return "cse_" + i;
+            }
+        }
+    }
+
+    /**
+     * Returns the expression a statement evaluates first, or {@code null} if
+     * there is none.
+     */
+    private static Ast.Expression getValue(Ast.Statement statement) {
+        if (statement instanceof Ast.Statement.Expression) {
+            return ((Ast.Statement.Expression) statement).getExpression();
+        } else if (statement instanceof Ast.Statement.Declaration) {
+            return ((Ast.Statement.Declaration) statement).getValue().orElse(null);
+        } else if (statement instanceof Ast.Statement.Assignment) {
+            return ((Ast.Statement.Assignment) statement).getValue();
+        } else if (statement instanceof Ast.Statement.Return) {
+            return ((Ast.Statement.Return) statement).getValue();
+        } else if (statement instanceof Ast.Statement.If) {
+            return ((Ast.Statement.If) statement).getCondition();
+        }
+        return null;
+    }
+
+    private static Ast.Statement withValue(Ast.Statement statement, Ast.Expression value) {
+        if (statement instanceof Ast.Statement.Expression) {
+            return new Ast.Statement.Expression(value);
+        } else if (statement instanceof Ast.Statement.Declaration) {
+            Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) statement;
+            return annotate(new Ast.Statement.Declaration(declaration.getName(), declaration.getTypeName(), Optional.of(value)), declaration);
+        } else if (statement instanceof Ast.Statement.Assignment) {
+            return new Ast.Statement.Assignment(((Ast.Statement.Assignment) statement).getReceiver(), value);
+        } else if (statement instanceof Ast.Statement.Return) {
+            return new Ast.Statement.Return(value);
+        }
+        Ast.Statement.If branch = (Ast.Statement.If) statement;
+        return new Ast.Statement.If(value, branch.getThenStatements(), branch.getElseStatements());
+    }
+
+    private static List<Ast.Expression> children(Ast.Expression expression) {
+        if (expression instanceof Ast.Expression.Group) {
+            return List.of(((Ast.Expression.Group) expression).getExpression());
+        } else if (expression instanceof Ast.Expression.Binary) {
+            return List.of(((Ast.Expression.Binary) expression).getLeft(), ((Ast.Expression.Binary) expression).getRight());
+        } else if (expression instanceof Ast.Expression.Access) {
+            return ((Ast.Expression.Access) expression).getReceiver().map(List::of).orElse(List.of());
+        } else if (expression instanceof Ast.Expression.Function) {
+            List<Ast.Expression> children = new ArrayList<>();
+            ((Ast.Expression.Function) expression).getReceiver().ifPresent(children::add);
+            children.addAll(((Ast.Expression.Function) expression).getArguments());
+            return children;
+        }
+        return List.of();
+    }
+
+    /**
+     * Computes the information of every node of an expression bottom up
+     * with an explicit stack, returning the nodes in that order.
+     */
+    private static List<Ast.Expression> index(Ast.Expression root, Map<Ast.Expression, Info> infos) {
+        List<Ast.Expression> order = new ArrayList<>();
+        List<Ast.Expression> pending = new ArrayList<>(List.of(root));
+        while (!pending.isEmpty()) {
+            Ast.Expression next = pending.remove(pending.size() - 1);
+            order.add(next);
+            pending.addAll(children(next));
+        }
+        Collections.reverse(order); // children before their parents
+        for (Ast.Expression node : order) {
+            Info info = new Info();
+            info.call = node instanceof Ast.Expression.Function;
+            info.hash = node.getClass().hashCode();
+            if (node instanceof Ast.Expression.Literal) {
+                info.hash = 31 * info.hash + Objects.hashCode(((Ast.Expression.Literal) node).getLiteral());
+            } else if (node instanceof Ast.Expression.Binary) {
+                info.hash = 31 * info.hash + ((Ast.Expression.Binary) node).getOperator().hashCode();
+            } else if (node instanceof Ast.Expression.Access) {
+                info.hash = 31 * info.hash + ((Ast.Expression.Access) node).getName().hashCode();
+            } else if (node instanceof Ast.Expression.Function) {
+                info.hash = 31 * info.hash + ((Ast.Expression.Function) node).getName().hashCode();
+            }
+            for (Ast.Expression child : children(node)) {
+                Info other = infos.get(child);
+                info.size += other.size;
+                info.hash = 31 * info.hash + other.hash;
+                info.call |= other.call;
+            }
+            infos.put(node, info);
+        }
+        return order;
+    }
+
+    private static boolean containsCall(Ast.Expression expression) {
+        List<Ast.Expression> pending = new ArrayList<>(List.of(expression));
+        while (!pending.isEmpty()) {
+            Ast.Expression next = pending.remove(pending.size() - 1);
+            if (next instanceof Ast.Expression.Function) {
+                return true;
+            }
+            pending.addAll(children(next));
+        }
+        return false;
+    }
+
+    /**
+     * A use of an expression, with whether it is only evaluated depending on
+     * the left side of {@code &&} or {@code ||}, and whether a call is
+     * evaluated before it.
+     */
+    private static final class Occurrence {
+
+        private final Ast.Expression node;
+        private final boolean conditional;
+        private final boolean afterCall;
+
+        private Occurrence(Ast.Expression node, boolean conditional, boolean afterCall) {
+            this.node = node;
+            this.conditional = conditional;
+            this.afterCall = afterCall;
+        }
+
+    }
+
+    /**
+     * Returns the uses of an expression within another in the order they
+     * are evaluated, walking it with an explicit stack.
+     */
+    private static List<Occurrence> find(Ast.Expression root, Ast.Expression expression) {
+        List<Occurrence> occurrences = new ArrayList<>();
+        List<Object> pending = new ArrayList<>(List.of(root)); // expressions, or a function once its call is made
+        List<Boolean> conditionals = new ArrayList<>(List.of(false));
+        int calls = 0;
+        while (!pending.isEmpty()) {
+            Object next = pending.remove(pending.size() - 1);
+            boolean conditional = conditionals.remove(conditionals.size() - 1);
+            if (!(next instanceof Ast.Expression)) {
+                calls++;
+            } else if (next.equals(expression)) {
+                occurrences.add(new Occurrence((Ast.Expression) next, conditional, calls > 0));
+            } else {
+                if (next instanceof Ast.Expression.Function) {
+                    pending.add(Boolean.TRUE);
+                    conditionals.add(conditional);
+                }
+                List<Ast.Expression> children = children((Ast.Expression) next);
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    pending.add(children.get(i));
+                    conditionals.add(conditional || i == 1 && next instanceof Ast.Expression.Binary
+                            && (((Ast.Expression.Binary) next).getOperator().equals("&&")
+                            || ((Ast.Expression.Binary) next).getOperator().equals("||")));
+                }
+            }
+        }
+        return occurrences;
+    }
+
+    /**
+     * Replaces the given uses of an expression with a local. A group around
+     * a replaced use is replaced as well, since the Analyzer only allows
+     * groups around binary expressions.
+     */
+    private static final class Replacement extends Pass {
+
+        private final Set<Ast.Expression> replaced;
+        private final Ast.Expression.Access access;
+
+        private Replacement(Set<Ast.Expression> replaced, Ast.Expression.Access access) {
+            this.replaced = replaced;
+            this.access = access;
+        }
+
+        @Override
+        public String getName() {
+            return "replacement";
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Access ast) {
+            return replaced.contains(ast) ? copy() : super.visit(ast);
+        }
+
+        @Override
+        protected Ast.Expression rewrite(Ast.Expression.Group ast, Ast.Expression expression) {
+            return expression instanceof Ast.Expression.Access && ((Ast.Expression.Access) expression).getName().equals(access.getName())
+                    ? expression : super.rewrite(ast, expression);
+        }
+
+        @Override
+        protected Ast.Expression rewrite(Ast.Expression.Binary ast, Ast.Expression left, Ast.Expression right) {
+            return replaced.contains(ast) ? copy() : super.rewrite(ast, left, right);
+        }
+
+        private Ast.Expression.Access copy() {
+            return annotate(new Ast.Expression.Access(Optional.empty(), access.getName()), access);
+        }
+
+    }
+
+    /**
+     * Collects the variables and fields an AST reads, assigns, and declares,
+     * and whether it calls a function, without rewriting anything.
+     */
+    private static final class Effects extends Pass {
+
+        private final Set<String> reads = new HashSet<>();
+        private final Set<String> fields = new HashSet<>();
+        private final Set<String> assignments = new HashSet<>();
+        private final Set<String> fieldAssignments = new HashSet<>();
+        private final Set<String> declarations = new HashSet<>();
+        private boolean call = false;
+
+        @Override
+        public String getName() {
+            return "effects";
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.Declaration ast) {
+            declarations.add(ast.getName());
+            return super.visit(ast);
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.Assignment ast) {
+            if (ast.getReceiver() instanceof Ast.Expression.Access) {
+                Ast.Expression.Access receiver = (Ast.Expression.Access) ast.getReceiver();
+                (receiver.getReceiver().isPresent() ? fieldAssignments : assignments).add(receiver.getName());
+            }
+            return super.visit(ast);
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Access ast) {
+            (ast.getReceiver().isPresent() ? fields : reads).add(ast.getName());
+            return super.visit(ast);
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Function ast) {
+            call = true;
+            return super.visit(ast);
+        }
+
+    }
+
+}
@@ -0,0 +1,283 @@
+package plc.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A cache of compiled sources in a directory, so a source which has been
+ * compiled before skips the {@link Lexer}, {@link Parser}, {@link Analyzer},
+ * and {@link Generator} entirely.
+ *
+ * Each entry is a file named by the SHA-256 hash of {@link #VERSION} and the
+ * source, holding a CRC-32 of the rest of the file, the generated code, and
+ * the analyzed AST as written by {@link FlatAst#write(OutputStream)}. Entries
+ * are written to a temporary file which is then atomically moved into place,
+ * so a crash never leaves a partial entry behind, and an entry which is
+ * corrupted anyway fails its checksum or {@link FlatAst#read(ByteBuffer)} and
+ * is treated as a miss. When the entries exceed the size limit, the least recently used
+ * are deleted, using the modification time of the files to carry the order
+ * across instances.
+ */
+public final class CompilationCache {
+
+    /**
+     * The version of the compiler, which is part of the key of every entry so
+     * that entries from other versions are never used. Increase this whenever
+     * the output of the pipeline changes.
+     */
+    public static final String VERSION = "plc-2/ast-" + FlatAst.VERSION;
+
+    private static final String SUFFIX = ".plc";
+    // Temporary files older than this were left by a crash rather than being
+    // written by another instance sharing the directory.
+    private static final long STALE_TEMPORARY_MILLIS = 60 * 60 * 1000;
+
+    private final Path directory;
+    private final long maxSize;
+    private final Map<String, Long> sizes = new LinkedHashMap<>(16, 0.75f, true); // entry sizes, least recently used first
+    private long size = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Opens the cache in {@code directory}, creating it if necessary, keeping
+     * at most {@code maxSize} bytes of entries. Temporary files left by a
+     * crash are deleted once they are an hour old, since newer ones may still
+     * be written by another instance.
+     */
+    public CompilationCache(Path directory, long maxSize) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxSize = maxSize;
+        List<Path> entries = new ArrayList<>();
+        long stale = System.currentTimeMillis() - STALE_TEMPORARY_MILLIS;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                if (path.getFileName().toString().endsWith(SUFFIX)) {
+                    entries.add(path);
+                } else if (path.getFileName().toString().endsWith(".tmp")) {
+                    try {
+                        if (Files.getLastModifiedTime(path).toMillis() < stale) {
+                            Files.deleteIfExists(path);
+                        }
+                    } catch (IOException e) {
+                        // already moved into place or deleted by its instance
+                    }
+                }
+            }
+        }
+        entries.sort(Comparator.comparing(path -> {
+            try {
+                return Files.getLastModifiedTime(path);
+            } catch (IOException e) {
+                return FileTime.fromMillis(0);
+            }
+        }));
+        for (Path path : entries) {
+            String name = path.getFileName().toString();
+            long length = Files.size(path);
+            sizes.put(name.substring(0, name.length() - SUFFIX.length()), length);
+            size += length;
+        }
+        evict();
+    }
+
+    /**
+     * The result of compiling a source: the analyzed AST and the generated
+     * code.
+     */
+    public static final class Result {
+
+        private final Ast.Source source;
+        private final String code;
+
+        private Result(Ast.Source source, String code) {
+            this.source = source;
+            this.code = code;
+        }
+
+        public Ast.Source getSource() {
+            return source;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+    }
+
+    /**
+     * Returns the compiled source from the cache, or compiles it and adds it
+     * to the cache. A {@link ParseException} or other error from the pipeline
+     * is thrown as usual, and nothing is cached. The result is returned even
+     * if it cannot be written to the cache, which only costs a later compile.
+     */
+    public Result compile(String source) throws IOException {
+        String key = key(source);
+        Result result = lookup(key);
+        if (result != null) {
+            return result;
+        }
+        Ast.Source ast = new Parser(new Lexer(source).lexBuffer()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(ast);
+        result = new Result(ast, writer.toString());
+        try {
+            store(key, result);
+        } catch (IOException e) {
+            // not cached, so the next compile of the source is a miss
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cached result for the key, or {@code null} if there is
+     * none, counting the hit or miss.
+     */
+    private synchronized Result lookup(String key) throws IOException {
+        Path path = directory.resolve(key + SUFFIX);
+        if (sizes.containsKey(key) || Files.exists(path)) { // the entry may have been added by another instance
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int checksum = buffer.getInt();
+                CRC32 crc = new CRC32();
+                crc.update(buffer.slice());
+                int length = buffer.getInt();
+                if ((int) crc.getValue() != checksum || length < 0 || length > buffer.remaining()) {
+                    throw new IOException("Corrupt cache entry " + path + ".");
+                }
+                byte[] code = new byte[length];
+                buffer.get(code);
+                FlatAst ast = FlatAst.read(buffer.slice()); // validates every method body, so none fail when decoded later
+                Ast.Source source = (Ast.Source) ast.get(ast.getRoot());
+                Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+                Long previous = sizes.put(key, channel.size());
+                size += channel.size() - (previous != null ? previous : 0);
+                hits++;
+                return new Result(source, new String(code, StandardCharsets.UTF_8));
+            } catch (IOException | RuntimeException e) {
+                remove(key); // missing or unreadable, so compile it again
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Writes the result to a temporary file, moves it into place, and evicts
+     * entries if the cache is over its size limit.
+     */
+    private synchronized void store(String key, Result result) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // the checksum, filled in below
+        byte[] code = result.code.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(code.length);
+        out.write(code);
+        FlatAst.of(result.source).write(out);
+        ByteBuffer entry = ByteBuffer.wrap(bytes.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(entry.slice(4, entry.capacity() - 4));
+        entry.putInt(0, (int) crc.getValue());
+        Path temporary = Files.createTempFile(directory, key, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (entry.hasRemaining()) {
+                    channel.write(entry);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, directory.resolve(key + SUFFIX),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        Long previous = sizes.put(key, (long) bytes.size());
+        size += bytes.size() - (previous != null ? previous : 0);
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache is within its
+     * size limit.
+     */
+    private void evict() throws IOException {
+        Iterator<Map.Entry<String, Long>> iterator = sizes.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            Files.deleteIfExists(directory.resolve(entry.getKey() + SUFFIX));
+            size -= entry.getValue();
+            iterator.remove();
+        }
+    }
+
+    private void remove(String key) throws IOException {
+        Long length = sizes.remove(key);
+        if (length != null) {
+            size -= length;
+        }
+        Files.deleteIfExists(directory.resolve(key + SUFFIX));
+    }
+
+    /**
+     * Returns the key of a source, the SHA-256 hash of {@link #VERSION} and
+     * the source.
+     */
+    private static String key(String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(VERSION.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(source.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e); // every Java platform supports SHA-256
+        }
+    }
+
+    /**
+     * Returns the number of compiles which were found in the cache.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of compiles which were not found in the cache,
+     * including those which then failed.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the total size in bytes of the entries in the cache.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+}
@@ -0,0 +1,260 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Evaluates binary and group expressions whose operands are all literals,
+ * and substitutes the values of constant fields initialized to a literal at
+ * their uses, so neither back end evaluates them again on every execution.
+ *
+ * Values are computed with the rules of the {@link Interpreter}. An
+ * expression is only folded when the {@link Generator}'s Java code computes
+ * the same value: integers must stay within the range of an {@code int},
+ * decimal division must give the same {@code double}, and strings are only
+ * concatenated with values Java prints the same way. Anything else, such as
+ * a division by zero or an operation the Interpreter rejects, is left for
+ * the back ends to evaluate as before.
+ */
+public final class ConstantFolding extends Pass {
+
+    private final Map<String, Ast.Expression.Literal> constants = new HashMap<>();
+    private final List<Set<String>> scopes = new ArrayList<>(); // local names which shadow fields
+
+    @Override
+    public String getName() {
+        return "constant-folding";
+    }
+
+    @Override
+    public Ast visit(Ast.Source ast) {
+        constants.clear();
+        scopes.clear();
+        return super.visit(ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Field ast) {
+        Ast.Field field = (Ast.Field) super.visit(ast);
+        constants.remove(field.getName());
+        if (field.getConstant() && field.getValue().isPresent()
+                && field.getValue().get() instanceof Ast.Expression.Literal
+                && field.getValue().get().getType() == Environment.getType(field.getTypeName())) {
+            constants.put(field.getName(), (Ast.Expression.Literal) field.getValue().get());
+        }
+        return field;
+    }
+
+    @Override
+    public Ast visit(Ast.Method ast) {
+        scopes.add(new HashSet<>(ast.getParameters()));
+        try {
+            return super.visit(ast);
+        } finally {
+            scopes.remove(scopes.size() - 1);
+        }
+    }
+
+    @Override
+    protected List<Ast.Statement> visitStatements(List<Ast.Statement> statements) {
+        scopes.add(new HashSet<>());
+        try {
+            return super.visitStatements(statements);
+        } finally {
+            scopes.remove(scopes.size() - 1);
+        }
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Declaration ast) {
+        Ast result = super.visit(ast);
+        scopes.get(scopes.size() - 1).add(ast.getName());
+        return result;
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Assignment ast) {
+        Ast.Expression value = (Ast.Expression) visit(ast.getValue());
+        return value != ast.getValue() ? new Ast.Statement.Assignment(ast.getReceiver(), value) : ast;
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Access ast) {
+        Ast.Expression.Literal constant = constants.get(ast.getName());
+        if (ast.getReceiver().isPresent() || constant == null || isShadowed(ast.getName())) {
+            return super.visit(ast);
+        }
+        return changed(annotate(new Ast.Expression.Literal(constant.getLiteral()), constant));
+    }
+
+    private boolean isShadowed(String name) {
+        for (Set<String> scope : scopes) {
+            if (scope.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected Ast.Expression rewrite(Ast.Expression.Group ast, Ast.Expression expression) {
+        if (expression instanceof Ast.Expression.Literal) {
+            return changed(expression);
+        }
+        return super.rewrite(ast, expression);
+    }
+
+    @Override
+    protected Ast.Expression rewrite(Ast.Expression.Binary ast, Ast.Expression left, Ast.Expression right) {
+        if (left instanceof Ast.Expression.Literal && right instanceof Ast.Expression.Literal) {
+            Object value = fold(ast.getOperator(),
+                    ((Ast.Expression.Literal) left).getLiteral(), ((Ast.Expression.Literal) right).getLiteral());
+            if (value != null) {
+                Ast.Expression.Literal literal = new Ast.Expression.Literal(value);
+                literal.setType(getType(value));
+                return changed(literal);
+            }
+        }
+        return super.rewrite(ast, left, right);
+    }
+
+    /**
+     * Returns the value of a binary expression of two literals, or
+     * {@code null} if it is not folded.
+     */
+    private static Object fold(String operator, Object left, Object right) {
+        if (left instanceof BigInteger && right instanceof BigInteger) {
+            return foldInteger(operator, (BigInteger) left, (BigInteger) right);
+        } else if (left instanceof BigDecimal && right instanceof BigDecimal) {
+            return foldDecimal(operator, (BigDecimal) left, (BigDecimal) right);
+        } else if (left instanceof Boolean && right instanceof Boolean) {
+            switch (operator) {
+                case "&&":
+                    return (Boolean) left && (Boolean) right;
+                case "||":
+                    return (Boolean) left || (Boolean) right;
+                case "==":
+                    return left.equals(right);
+                case "!=":
+                    return !left.equals(right);
+            }
+        } else if (operator.equals("+") && (left instanceof String || right instanceof String)) {
+            if (isPrintedAlike(left) && isPrintedAlike(right)) {
+                return left.toString() + right.toString();
+            }
+        } else if (left instanceof Character && right instanceof Character) {
+            return compare(operator, left, right);
+        } else if (left instanceof String && right instanceof String
+                && (operator.equals("==") || operator.equals("!="))) {
+            return compare(operator, left, right); // Java compares the interned literals the same way
+        }
+        return null;
+    }
+
+    private static Object foldInteger(String operator, BigInteger left, BigInteger right) {
+        BigInteger value;
+        switch (operator) {
+            case "+":
+                value = left.add(right);
+                break;
+            case "-":
+                value = left.subtract(right);
+                break;
+            case "*":
+                value = left.multiply(right);
+                break;
+            case "/":
+                if (right.signum() == 0) {
+                    return null;
+                }
+                value = left.divide(right);
+                break;
+            default:
+                return compare(operator, left, right);
+        }
+        return value.bitLength() < Integer.SIZE ? value : null;
+    }
+
+    private static Object foldDecimal(String operator, BigDecimal left, BigDecimal right) {
+        double first = left.doubleValue();
+        double second = right.doubleValue();
+        BigDecimal value;
+        double expected;
+        switch (operator) {
+            case "/":
+                if (right.signum() == 0) {
+                    return null;
+                }
+                value = left.divide(right, 1, RoundingMode.HALF_UP);
+                expected = first / second;
+                break;
+            case "==":
+            case "!=":
+                Object equal = compare(operator, left, right);
+                return equal.equals(operator.equals("==") ? first == second : first != second) ? equal : null;
+            default:
+                Object comparison = compare(operator, left, right);
+                return comparison != null && comparison.equals(compare(operator, first, second)) ? comparison : null;
+        }
+        return Double.isFinite(expected) && value.doubleValue() == expected ? value : null;
+    }
+
+    /**
+     * Returns the result of a comparison like the {@link Interpreter}, or
+     * {@code null} if the operator is not a comparison.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object compare(String operator, Object left, Object right) {
+        switch (operator) {
+            case "<":
+                return ((Comparable<Object>) left).compareTo(right) < 0;
+            case "<=":
+                return ((Comparable<Object>) left).compareTo(right) <= 0;
+            case ">":
+                return ((Comparable<Object>) left).compareTo(right) > 0;
+            case ">=":
+                return ((Comparable<Object>) left).compareTo(right) >= 0;
+            case "==":
+                return Objects.equals(left, right);
+            case "!=":
+                return !Objects.equals(left, right);
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether Java prints a value in a string concatenation the same
+     * way as the {@link Interpreter}, which is not the case for decimals, and
+     * whether it can be part of a folded String literal, which the
+     * {@link Generator} prints without escaping.
+     */
+    private static boolean isPrintedAlike(Object value) {
+        if (!(value instanceof String || value instanceof BigInteger
+                || value instanceof Boolean || value instanceof Character)) {
+            return false;
+        }
+        return value.toString().chars().noneMatch(c -> c == '"' || c == '\\' || Character.isISOControl(c));
+    }
+
+    private static Environment.Type getType(Object value) {
+        if (value instanceof BigInteger) {
+            return Environment.Type.INTEGER;
+        } else if (value instanceof BigDecimal) {
+            return Environment.Type.DECIMAL;
+        } else if (value instanceof Boolean) {
+            return Environment.Type.BOOLEAN;
+        } else if (value instanceof Character) {
+            return Environment.Type.CHARACTER;
+        }
+        return Environment.Type.STRING;
+    }
+
+}
@@ -0,0 +1,270 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes code which can never run or whose result is never used:
+ * statements after a return, branches of an {@code IF} whose condition is a
+ * literal, {@code WHILE} and {@code FOR} loops whose condition is
+ * {@code FALSE}, local declarations which are never used and whose value has
+ * no side effects, and methods which are never called from {@code main} or a
+ * field.
+ *
+ * The branch of a constant {@code IF} replaces it in the enclosing block
+ * only if it declares nothing, since its declarations would otherwise move
+ * to the enclosing scope. Run after {@link ConstantFolding} so that folded
+ * conditions are literals.
+ */
+public final class DeadCodeElimination extends Pass {
+
+    @Override
+    public String getName() {
+        return "dead-code-elimination";
+    }
+
+    @Override
+    public Ast visit(Ast.Source ast) {
+        Ast.Source source = (Ast.Source) super.visit(ast);
+        Map<String, List<Ast.Method>> methods = new HashMap<>();
+        for (Ast.Method method : source.getMethods()) {
+            methods.computeIfAbsent(method.getName() + "/" + method.getParameters().size(), key -> new ArrayList<>()).add(method);
+        }
+        if (!methods.containsKey("main/0")) {
+            return source;
+        }
+        References references = new References();
+        source.getFields().forEach(field -> field.getValue().ifPresent(references::visit));
+        references.functions.add("main/0");
+        Set<String> reached = new HashSet<>();
+        List<String> pending = new ArrayList<>(references.functions);
+        while (!pending.isEmpty()) {
+            String key = pending.remove(pending.size() - 1);
+            if (methods.containsKey(key) && reached.add(key)) {
+                references.functions.clear();
+                methods.get(key).forEach(method -> method.getStatements().forEach(references::visit));
+                pending.addAll(references.functions);
+            }
+        }
+        List<Ast.Method> reachable = new ArrayList<>();
+        for (Ast.Method method : source.getMethods()) {
+            if (reached.contains(method.getName() + "/" + method.getParameters().size())) {
+                reachable.add(method);
+            } else {
+                changed(method);
+            }
+        }
+        return reachable.size() != source.getMethods().size() ? new Ast.Source(source.getFields(), reachable) : source;
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.If ast) {
+        Ast.Statement.If rewritten = (Ast.Statement.If) super.visit(ast);
+        if (rewritten.getThenStatements().isEmpty() && !ast.getThenStatements().isEmpty()
+                && (!rewritten.getElseStatements().isEmpty() || !isPure(rewritten.getCondition()))) {
+            // the Analyzer requires a body, so keep the original unless the whole statement can be removed
+            return new Ast.Statement.If(rewritten.getCondition(), ast.getThenStatements(), rewritten.getElseStatements());
+        }
+        return rewritten;
+    }
+
+    @Override
+    protected List<Ast.Statement> visitStatements(List<Ast.Statement> statements) {
+        List<Ast.Statement> result = new ArrayList<>();
+        boolean rewritten = false;
+        for (int i = 0; i < statements.size(); i++) {
+            Ast.Statement statement = (Ast.Statement) visit(statements.get(i));
+            rewritten |= statement != statements.get(i);
+            rewritten |= append(statement, result);
+            if (!result.isEmpty() && returns(result.get(result.size() - 1)) && i + 1 < statements.size()) {
+                statements.subList(i + 1, statements.size()).forEach(this::changed);
+                rewritten = true;
+                break;
+            }
+        }
+        References references = new References(); // the names used by the statements after the current one
+        for (int i = result.size() - 1; i >= 0; i--) {
+            Ast.Statement statement = result.get(i);
+            if (statement instanceof Ast.Statement.Declaration
+                    && !references.variables.contains(((Ast.Statement.Declaration) statement).getName())
+                    && ((Ast.Statement.Declaration) statement).getValue().map(DeadCodeElimination::isPure).orElse(true)) {
+                changed(result.remove(i));
+                rewritten = true;
+            } else {
+                references.visit(statement);
+            }
+        }
+        return rewritten ? result : statements;
+    }
+
+    /**
+     * Appends a statement to a block, or what remains of it if it is a
+     * branch or loop with a literal condition, returning whether anything
+     * other than the statement itself was appended.
+     */
+    private boolean append(Ast.Statement statement, List<Ast.Statement> result) {
+        if (statement instanceof Ast.Statement.If) {
+            Ast.Statement.If branch = (Ast.Statement.If) statement;
+            if (branch.getThenStatements().isEmpty() && branch.getElseStatements().isEmpty()) {
+                changed(statement); // only created above when the condition is pure
+                return true;
+            } else if (isLiteral(branch.getCondition(), true)) {
+                if (!declares(branch.getThenStatements())) {
+                    result.addAll(branch.getThenStatements());
+                    changed(statement);
+                    return true;
+                } else if (!branch.getElseStatements().isEmpty()) {
+                    result.add(new Ast.Statement.If(branch.getCondition(), branch.getThenStatements(), List.of()));
+                    changed(statement);
+                    return true;
+                }
+            } else if (isLiteral(branch.getCondition(), false)) {
+                if (!declares(branch.getElseStatements())) {
+                    result.addAll(branch.getElseStatements());
+                } else {
+                    Ast.Expression.Literal condition = new Ast.Expression.Literal(true);
+                    condition.setType(Environment.Type.BOOLEAN);
+                    result.add(new Ast.Statement.If(condition, branch.getElseStatements(), List.of()));
+                }
+                changed(statement);
+                return true;
+            }
+        } else if (statement instanceof Ast.Statement.While) {
+            if (isLiteral(((Ast.Statement.While) statement).getCondition(), false)) {
+                changed(statement);
+                return true;
+            }
+        } else if (statement instanceof Ast.Statement.For) {
+            Ast.Statement initialization = ((Ast.Statement.For) statement).getInitialization();
+            if (isLiteral(((Ast.Statement.For) statement).getCondition(), false)
+                    && !(initialization instanceof Ast.Statement.Declaration)) {
+                if (initialization != null) {
+                    result.add(initialization);
+                }
+                changed(statement);
+                return true;
+            }
+        }
+        result.add(statement);
+        return false;
+    }
+
+    /**
+     * Returns whether a statement always returns, so nothing after it in the
+     * same block can run.
+     */
+    private static boolean returns(Ast.Statement statement) {
+        if (statement instanceof Ast.Statement.Return) {
+            return true;
+        } else if (statement instanceof Ast.Statement.If) {
+            List<Ast.Statement> thenStatements = ((Ast.Statement.If) statement).getThenStatements();
+            List<Ast.Statement> elseStatements = ((Ast.Statement.If) statement).getElseStatements();
+            return !thenStatements.isEmpty() && returns(thenStatements.get(thenStatements.size() - 1))
+                    && !elseStatements.isEmpty() && returns(elseStatements.get(elseStatements.size() - 1));
+        }
+        return false;
+    }
+
+    private static boolean declares(List<Ast.Statement> statements) {
+        return statements.stream().anyMatch(statement -> statement instanceof Ast.Statement.Declaration);
+    }
+
+    private static boolean isLiteral(Ast.Expression expression, boolean value) {
+        return expression instanceof Ast.Expression.Literal
+                && Boolean.valueOf(value).equals(((Ast.Expression.Literal) expression).getLiteral());
+    }
+
+    /**
+     * Returns whether evaluating an expression can neither fail nor have a
+     * side effect in the {@link Interpreter}, which is the case for literals,
+     * variables, and operators which cannot fail on operands of the types the
+     * {@link Analyzer} allows. Variables may still be NIL, so they are only
+     * allowed outside of operators other than {@code ==} and {@code !=}.
+     * Nested expressions are checked with an explicit stack.
+     */
+    private static boolean isPure(Ast.Expression expression) {
+        List<Ast.Expression> pending = new ArrayList<>(List.of(expression));
+        List<Boolean> operands = new ArrayList<>(List.of(false)); // whether an operator requires a value
+        while (!pending.isEmpty()) {
+            Ast.Expression next = pending.remove(pending.size() - 1);
+            boolean operand = operands.remove(operands.size() - 1);
+            if (next instanceof Ast.Expression.Group) {
+                pending.add(((Ast.Expression.Group) next).getExpression());
+                operands.add(operand);
+            } else if (next instanceof Ast.Expression.Binary) {
+                switch (((Ast.Expression.Binary) next).getOperator()) {
+                    case "==":
+                    case "!=":
+                        operand = false;
+                        break;
+                    case "+":
+                    case "-":
+                    case "*":
+                        if (Ast.getAnnotation(next) != Environment.Type.INTEGER) {
+                            return false; // the Interpreter only supports these for integers and strings, which may be NIL
+                        }
+                        operand = true;
+                        break;
+                    case "&&":
+                    case "||":
+                    case "<":
+                    case "<=":
+                    case ">":
+                    case ">=":
+                        operand = true;
+                        break;
+                    default:
+                        return false;
+                }
+                pending.add(((Ast.Expression.Binary) next).getLeft());
+                pending.add(((Ast.Expression.Binary) next).getRight());
+                operands.add(operand);
+                operands.add(operand);
+            } else if (next instanceof Ast.Expression.Access) {
+                if (operand || ((Ast.Expression.Access) next).getReceiver().isPresent()) {
+                    return false;
+                }
+            } else if (!(next instanceof Ast.Expression.Literal)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects the variables and methods an AST refers to without a
+     * receiver, without rewriting anything.
+     */
+    private static final class References extends Pass {
+
+        private final Set<String> variables = new HashSet<>();
+        private final Set<String> functions = new HashSet<>();
+
+        @Override
+        public String getName() {
+            return "references";
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Access ast) {
+            if (!ast.getReceiver().isPresent()) {
+                variables.add(ast.getName());
+            }
+            return super.visit(ast);
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Function ast) {
+            if (!ast.getReceiver().isPresent()) {
+                functions.add(ast.getName() + "/" + ast.getArguments().size());
+            }
+            return super.visit(ast);
+        }
+
+    }
+
+}
@@ -74,10 +74,24 @@ public final class Environment {
             return scope.lookupVariable(name);
         }
 
+        /**
+         * Returns the field named by the given {@link Symbols} id.
+         */
+        public Variable getField(int symbol) {
+            return scope.lookupVariable(symbol);
+        }
+
         public Function getFunction(String name, int arity) {
             return scope.lookupFunction(name, arity + 1);
         }
 
+        /**
+         * Returns the method named by the given {@link Symbols} id.
+         */
+        public Function getFunction(int symbol, int arity) {
+            return scope.lookupFunction(symbol, arity + 1);
+        }
+
         @Override
         public String toString() {
             return "Type{" +
@@ -128,6 +142,13 @@ public final class Environment {
             return scope.lookupVariable(name);
         }
 
+        /**
+         * Returns the field named by the given {@link Symbols} id.
+         */
+        public Variable getField(int symbol) {
+            return scope.lookupVariable(symbol);
+        }
+
         public Type getType() {
             return type;
         }
@@ -137,11 +158,25 @@ public final class Environment {
         }
 
         public void setField(String name, PlcObject value) {
-            scope.lookupVariable(name).setValue(value);
+            setField(Symbols.intern(name), value);
+        }
+
+        /**
+         * Sets the field named by the given {@link Symbols} id.
+         */
+        public void setField(int symbol, PlcObject value) {
+            scope.lookupVariable(symbol).setValue(value);
         }
 
         public PlcObject callMethod(String name, List<PlcObject> arguments) {
-            Function function = scope.lookupFunction(name, arguments.size() + 1);
+            return callMethod(Symbols.intern(name), arguments);
+        }
+
+        /**
+         * Calls the method named by the given {@link Symbols} id.
+         */
+        public PlcObject callMethod(int symbol, List<PlcObject> arguments) {
+            Function function = scope.lookupFunction(symbol, arguments.size() + 1);
             arguments = new ArrayList<>(arguments);
             arguments.add(0, this);
             return function.invoke(arguments);
@@ -0,0 +1,1006 @@
+package plc.project;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A compact encoding of an AST, storing each node as a run of ints in a single
+ * array instead of as {@link Ast} objects. Names, literals, and the variables,
+ * functions, and types set by the {@link Analyzer} are kept once each in a
+ * pool which nodes refer to by index. This takes a fraction of the memory of
+ * the object tree, which has an object for every node, list, and {@link
+ * Optional}.
+ *
+ * A node is identified by the index of its first int, which holds its {@link
+ * Kind}. Nodes can be read in place through {@link #getKind(int)}, {@link
+ * #getChild(int, int)}, and the like, or created as {@link Ast} objects with
+ * {@link #get(int)}, much like tokens from a {@link TokenBuffer}. A created
+ * method decodes its statements the first time they are accessed, so the
+ * {@link Interpreter} run through {@link #accept(Ast.Visitor)} only creates
+ * the bodies of the methods it calls. Visitors which walk every method, such
+ * as the {@link Analyzer} and {@link Generator}, still create the whole tree,
+ * so this only saves memory while the AST is not being visited.
+ *
+ * The encoding can also be saved with {@link #write(OutputStream)} and
+ * loaded with {@link #read(Path)}, so a source which has already been parsed
+ * and analyzed can be run or generated without doing either again.
+ */
+public final class FlatAst {
+
+    /**
+     * The kind of a node, one for each {@link Ast} class.
+     */
+    public enum Kind {
+        SOURCE, FIELD, METHOD,
+        EXPRESSION, DECLARATION, ASSIGNMENT, IF, FOR, WHILE, RETURN,
+        LITERAL, GROUP, BINARY, ACCESS, FUNCTION
+    }
+
+    /**
+     * The version of the format written by {@link #write(OutputStream)},
+     * which is increased whenever it changes.
+     */
+    public static final int VERSION = 1;
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final int NONE = -1; // an absent node, name, or annotation
+    private static final int MAGIC = 0x504C4341; // "PLCA"
+
+    /*
+     * The tags of the pool entries written by write(OutputStream).
+     */
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte DECIMAL = 3;
+    private static final byte CHARACTER = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte TYPE = 6;
+    private static final byte VARIABLE = 7;
+    private static final byte FUNCTION = 8;
+
+    /*
+     * The ints of each kind of node after its kind, where [x] is a list of a
+     * count followed by that many entries. Names and literals are indices in
+     * the pool, as is the annotation set by the analyzer (or NONE).
+     *
+     * SOURCE       [field] [method]
+     * FIELD        name typeName constant value annotation
+     * METHOD       name returnTypeName annotation [parameter] [parameterTypeName] [statement]
+     * EXPRESSION   expression
+     * DECLARATION  name typeName value annotation
+     * ASSIGNMENT   receiver value
+     * IF           condition [thenStatement] [elseStatement]
+     * FOR          initialization condition increment [statement]
+     * WHILE        condition [statement]
+     * RETURN       value
+     * LITERAL      literal annotation
+     * GROUP        expression annotation
+     * BINARY       operator left right annotation
+     * ACCESS       receiver name annotation
+     * FUNCTION     receiver name annotation [argument]
+     */
+    private final int[] data;
+    private final Object[] pool;
+    private final int root;
+
+    private FlatAst(int[] data, Object[] pool, int root) {
+        this.data = data;
+        this.pool = pool;
+        this.root = root;
+    }
+
+    /**
+     * Encodes an AST, including the annotations set on it by the {@link
+     * Analyzer}. The tree is walked with an explicit stack, so deeply nested
+     * expressions are encoded without overflowing the Java stack.
+     */
+    public static FlatAst of(Ast ast) {
+        Encoder encoder = new Encoder();
+        List<Ast> stack = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>(); // the number of children of each node on the stack, or -1 before they are pushed
+        List<Integer> nodes = new ArrayList<>(); // the encoded children waiting for their parent
+        stack.add(ast);
+        counts.add(-1);
+        while (!stack.isEmpty()) {
+            Ast next = stack.remove(stack.size() - 1);
+            int count = counts.remove(counts.size() - 1);
+            if (next == null) {
+                nodes.add(NONE);
+            } else if (count == -1) {
+                List<Ast> children = children(next);
+                stack.add(next);
+                counts.add(children.size());
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    stack.add(children.get(i));
+                    counts.add(-1);
+                }
+            } else {
+                List<Integer> encoded = nodes.subList(nodes.size() - count, nodes.size());
+                int[] children = encoded.stream().mapToInt(Integer::intValue).toArray();
+                encoded.clear();
+                nodes.add(encoder.write(next, children));
+            }
+        }
+        return new FlatAst(Arrays.copyOf(encoder.data, encoder.size), encoder.pool.toArray(), nodes.get(0));
+    }
+
+    /**
+     * Returns the direct children of a node in the order they are encoded,
+     * with {@code null} for an absent optional child.
+     */
+    private static List<Ast> children(Ast ast) {
+        List<Ast> children = new ArrayList<>();
+        if (ast instanceof Ast.Source) {
+            children.addAll(((Ast.Source) ast).getFields());
+            children.addAll(((Ast.Source) ast).getMethods());
+        } else if (ast instanceof Ast.Field) {
+            children.add(((Ast.Field) ast).getValue().orElse(null));
+        } else if (ast instanceof Ast.Method) {
+            children.addAll(((Ast.Method) ast).getStatements());
+        } else if (ast instanceof Ast.Statement.Expression) {
+            children.add(((Ast.Statement.Expression) ast).getExpression());
+        } else if (ast instanceof Ast.Statement.Declaration) {
+            children.add(((Ast.Statement.Declaration) ast).getValue().orElse(null));
+        } else if (ast instanceof Ast.Statement.Assignment) {
+            children.add(((Ast.Statement.Assignment) ast).getReceiver());
+            children.add(((Ast.Statement.Assignment) ast).getValue());
+        } else if (ast instanceof Ast.Statement.If) {
+            children.add(((Ast.Statement.If) ast).getCondition());
+            children.addAll(((Ast.Statement.If) ast).getThenStatements());
+            children.addAll(((Ast.Statement.If) ast).getElseStatements());
+        } else if (ast instanceof Ast.Statement.For) {
+            children.add(((Ast.Statement.For) ast).getInitialization());
+            children.add(((Ast.Statement.For) ast).getCondition());
+            children.add(((Ast.Statement.For) ast).getIncrement());
+            children.addAll(((Ast.Statement.For) ast).getStatements());
+        } else if (ast instanceof Ast.Statement.While) {
+            children.add(((Ast.Statement.While) ast).getCondition());
+            children.addAll(((Ast.Statement.While) ast).getStatements());
+        } else if (ast instanceof Ast.Statement.Return) {
+            children.add(((Ast.Statement.Return) ast).getValue());
+        } else if (ast instanceof Ast.Expression.Group) {
+            children.add(((Ast.Expression.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expression.Binary) {
+            children.add(((Ast.Expression.Binary) ast).getLeft());
+            children.add(((Ast.Expression.Binary) ast).getRight());
+        } else if (ast instanceof Ast.Expression.Access) {
+            children.add(((Ast.Expression.Access) ast).getReceiver().orElse(null));
+        } else if (ast instanceof Ast.Expression.Function) {
+            children.add(((Ast.Expression.Function) ast).getReceiver().orElse(null));
+            children.addAll(((Ast.Expression.Function) ast).getArguments());
+        }
+        return children;
+    }
+
+    /**
+     * Appends encoded nodes and pooled values while an AST is encoded.
+     */
+    private static final class Encoder {
+
+        private int[] data = new int[64];
+        private int size = 0;
+        private final List<Object> pool = new ArrayList<>();
+        private final Map<Object, Integer> values = new HashMap<>();
+        private final Map<Object, Integer> annotations = new IdentityHashMap<>();
+
+        /**
+         * Appends a node whose children were encoded at the given indices,
+         * returning its index.
+         */
+        private int write(Ast ast, int[] children) {
+            int node = size;
+            if (ast instanceof Ast.Source) {
+                int fields = ((Ast.Source) ast).getFields().size();
+                add(Kind.SOURCE.ordinal());
+                addList(children, 0, fields);
+                addList(children, fields, children.length);
+            } else if (ast instanceof Ast.Field) {
+                Ast.Field field = (Ast.Field) ast;
+                add(Kind.FIELD.ordinal());
+                add(value(field.getName()));
+                add(value(field.getTypeName()));
+                add(field.getConstant() ? 1 : 0);
+                add(children[0]);
+                add(annotation(field));
+            } else if (ast instanceof Ast.Method) {
+                Ast.Method method = (Ast.Method) ast;
+                add(Kind.METHOD.ordinal());
+                add(value(method.getName()));
+                add(method.getReturnTypeName().map(this::value).orElse(NONE));
+                add(annotation(method));
+                addValues(method.getParameters());
+                addValues(method.getParameterTypeNames());
+                addList(children, 0, children.length);
+            } else if (ast instanceof Ast.Statement.Expression) {
+                add(Kind.EXPRESSION.ordinal());
+                add(children[0]);
+            } else if (ast instanceof Ast.Statement.Declaration) {
+                Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) ast;
+                add(Kind.DECLARATION.ordinal());
+                add(value(declaration.getName()));
+                add(declaration.getTypeName().map(this::value).orElse(NONE));
+                add(children[0]);
+                add(annotation(declaration));
+            } else if (ast instanceof Ast.Statement.Assignment) {
+                add(Kind.ASSIGNMENT.ordinal());
+                add(children[0]);
+                add(children[1]);
+            } else if (ast instanceof Ast.Statement.If) {
+                int thenStatements = ((Ast.Statement.If) ast).getThenStatements().size();
+                add(Kind.IF.ordinal());
+                add(children[0]);
+                addList(children, 1, 1 + thenStatements);
+                addList(children, 1 + thenStatements, children.length);
+            } else if (ast instanceof Ast.Statement.For) {
+                add(Kind.FOR.ordinal());
+                add(children[0]);
+                add(children[1]);
+                add(children[2]);
+                addList(children, 3, children.length);
+            } else if (ast instanceof Ast.Statement.While) {
+                add(Kind.WHILE.ordinal());
+                add(children[0]);
+                addList(children, 1, children.length);
+            } else if (ast instanceof Ast.Statement.Return) {
+                add(Kind.RETURN.ordinal());
+                add(children[0]);
+            } else if (ast instanceof Ast.Expression.Literal) {
+                add(Kind.LITERAL.ordinal());
+                add(value(((Ast.Expression.Literal) ast).getLiteral()));
+                add(annotation(ast));
+            } else if (ast instanceof Ast.Expression.Group) {
+                add(Kind.GROUP.ordinal());
+                add(children[0]);
+                add(annotation(ast));
+            } else if (ast instanceof Ast.Expression.Binary) {
+                add(Kind.BINARY.ordinal());
+                add(value(((Ast.Expression.Binary) ast).getOperator()));
+                add(children[0]);
+                add(children[1]);
+                add(annotation(ast));
+            } else if (ast instanceof Ast.Expression.Access) {
+                add(Kind.ACCESS.ordinal());
+                add(children[0]);
+                add(value(((Ast.Expression.Access) ast).getName()));
+                add(annotation(ast));
+            } else if (ast instanceof Ast.Expression.Function) {
+                add(Kind.FUNCTION.ordinal());
+                add(children[0]);
+                add(value(((Ast.Expression.Function) ast).getName()));
+                add(annotation(ast));
+                addList(children, 1, children.length);
+            } else {
+                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+            }
+            return node;
+        }
+
+        private void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, 2 * size);
+            }
+            data[size++] = value;
+        }
+
+        private void addList(int[] children, int from, int to) {
+            add(to - from);
+            for (int i = from; i < to; i++) {
+                add(children[i]);
+            }
+        }
+
+        private void addValues(List<String> values) {
+            add(values.size());
+            for (String value : values) {
+                add(value(value));
+            }
+        }
+
+        /**
+         * Returns the index of a name or literal in the pool, adding it if it
+         * is not already there.
+         */
+        private int value(Object value) {
+            return values.computeIfAbsent(value, this::pool);
+        }
+
+        /**
+         * Returns the index of the annotation of a node in the pool, or {@link
+         * #NONE}. Annotations are pooled by identity, so nodes which shared
+         * a variable or function still do once decoded.
+         */
+        private int annotation(Ast ast) {
+            Object annotation = Ast.getAnnotation(ast);
+            return annotation == null ? NONE : annotations.computeIfAbsent(annotation, this::pool);
+        }
+
+        private int pool(Object value) {
+            pool.add(value);
+            return pool.size() - 1;
+        }
+
+    }
+
+    /**
+     * Returns the root node, which is the AST passed to {@link #of(Ast)}.
+     */
+    public int getRoot() {
+        return root;
+    }
+
+    public Kind getKind(int node) {
+        return KINDS[data[node]];
+    }
+
+    /**
+     * Returns the number of children of a node, counting absent optional
+     * children such as the value of a {@link Kind#FIELD} without one.
+     */
+    public int getChildCount(int node) {
+        return children(node).length;
+    }
+
+    /**
+     * Returns the child of a node at the given position, or -1 if it is an
+     * absent optional child. Children are in the order of the getters of the
+     * {@link Ast} class, so the children of a {@link Kind#SOURCE} are its
+     * fields followed by its methods.
+     */
+    public int getChild(int node, int i) {
+        return children(node)[i];
+    }
+
+    /**
+     * Returns the name of a field, method, declaration, access, or function.
+     */
+    public String getName(int node) {
+        switch (getKind(node)) {
+            case FIELD:
+            case METHOD:
+            case DECLARATION:
+                return (String) pool[data[node + 1]];
+            case ACCESS:
+            case FUNCTION:
+                return (String) pool[data[node + 2]];
+            default:
+                throw new IllegalArgumentException("A " + getKind(node) + " node does not have a name.");
+        }
+    }
+
+    /**
+     * Returns the operator of a binary expression.
+     */
+    public String getOperator(int node) {
+        if (getKind(node) != Kind.BINARY) {
+            throw new IllegalArgumentException("A " + getKind(node) + " node does not have an operator.");
+        }
+        return (String) pool[data[node + 1]];
+    }
+
+    /**
+     * Returns the value of a literal, as {@link Ast.Expression.Literal#getLiteral()}.
+     */
+    public Object getLiteral(int node) {
+        if (getKind(node) != Kind.LITERAL) {
+            throw new IllegalArgumentException("A " + getKind(node) + " node does not have a literal.");
+        }
+        return pool[data[node + 1]];
+    }
+
+    /**
+     * Returns the child nodes of a node, as described by {@link
+     * #getChild(int, int)}.
+     */
+    private int[] children(int node) {
+        switch (getKind(node)) {
+            case SOURCE:
+                return join(new int[0], node + 1, after(node + 1));
+            case FIELD:
+                return new int[] {data[node + 4]};
+            case METHOD:
+                return join(new int[0], statements(node));
+            case EXPRESSION:
+            case RETURN:
+            case GROUP:
+            case ACCESS:
+                return new int[] {data[node + 1]};
+            case DECLARATION:
+                return new int[] {data[node + 3]};
+            case ASSIGNMENT:
+                return new int[] {data[node + 1], data[node + 2]};
+            case IF:
+                return join(new int[] {data[node + 1]}, node + 2, after(node + 2));
+            case FOR:
+                return join(new int[] {data[node + 1], data[node + 2], data[node + 3]}, node + 4);
+            case WHILE:
+                return join(new int[] {data[node + 1]}, node + 2);
+            case LITERAL:
+                return new int[0];
+            case BINARY:
+                return new int[] {data[node + 2], data[node + 3]};
+            case FUNCTION:
+                return join(new int[] {data[node + 1]}, node + 4);
+            default:
+                throw new AssertionError("Unimplemented kind: " + getKind(node) + ".");
+        }
+    }
+
+    /**
+     * Returns the index of the list after the list at {@code list}.
+     */
+    private int after(int list) {
+        return list + 1 + data[list];
+    }
+
+    /**
+     * Returns the index of the list of statements of a method.
+     */
+    private int statements(int node) {
+        return after(after(node + 4));
+    }
+
+    /**
+     * Returns the given nodes followed by the entries of the lists at the
+     * given indices.
+     */
+    private int[] join(int[] nodes, int... lists) {
+        int length = nodes.length;
+        for (int list : lists) {
+            length += data[list];
+        }
+        int[] joined = Arrays.copyOf(nodes, length);
+        int i = nodes.length;
+        for (int list : lists) {
+            System.arraycopy(data, list + 1, joined, i, data[list]);
+            i += data[list];
+        }
+        return joined;
+    }
+
+    /**
+     * Creates the {@link Ast} of a node and everything within it, except the
+     * statements of methods, which are created on first access. As with
+     * {@link #of(Ast)}, the nodes are created with an explicit stack.
+     */
+    public Ast get(int node) {
+        int[] stack = new int[32]; // pairs of a node and its number of children, or -1 before they are pushed
+        int size = 0;
+        Ast[] nodes = new Ast[16]; // the created children waiting for their parent
+        int count = 0;
+        stack[size++] = node;
+        stack[size++] = -1;
+        while (size > 0) {
+            int children = stack[--size];
+            int next = stack[--size];
+            if (next == NONE) {
+                nodes = push(nodes, count++, null);
+            } else if (children == -1) {
+                int[] pending = getKind(next) == Kind.METHOD ? new int[0] : children(next);
+                if (size + 2 * pending.length + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, 2 * (size + 2 * pending.length + 2));
+                }
+                stack[size++] = next;
+                stack[size++] = pending.length;
+                for (int i = pending.length - 1; i >= 0; i--) {
+                    stack[size++] = pending[i];
+                    stack[size++] = -1;
+                }
+            } else {
+                count -= children;
+                Ast ast = create(next, Arrays.asList(nodes).subList(count, count + children));
+                Arrays.fill(nodes, count, count + children, null);
+                nodes = push(nodes, count++, ast);
+            }
+        }
+        return nodes[0];
+    }
+
+    private static Ast[] push(Ast[] nodes, int count, Ast ast) {
+        if (count == nodes.length) {
+            nodes = Arrays.copyOf(nodes, 2 * count);
+        }
+        nodes[count] = ast;
+        return nodes;
+    }
+
+    /**
+     * Runs a visitor over the AST, creating it with {@link #get(int)}. The
+     * created tree is not kept, so annotations set by an {@link Analyzer} run
+     * this way are lost; analyze the tree from {@link #get(int)} and encode it
+     * again with {@link #of(Ast)} to keep them.
+     */
+    public <T> T accept(Ast.Visitor<T> visitor) {
+        return visitor.visit(get(root));
+    }
+
+    /**
+     * Creates the {@link Ast} of a node from its already created children.
+     */
+    private Ast create(int node, List<Ast> children) {
+        switch (getKind(node)) {
+            case SOURCE: {
+                int fields = data[node + 1];
+                return new Ast.Source(list(children, 0, fields), list(children, fields, children.size()));
+            }
+            case FIELD: {
+                Ast.Field field = new Ast.Field(getName(node), (String) pool[data[node + 2]], data[node + 3] == 1,
+                        Optional.ofNullable((Ast.Expression) children.get(0)));
+                if (data[node + 5] != NONE) {
+                    field.setVariable((Environment.Variable) pool[data[node + 5]]);
+                }
+                return field;
+            }
+            case METHOD: {
+                int statements = statements(node);
+                Ast.Method method = new Ast.Method(getName(node), strings(node + 4), strings(after(node + 4)),
+                        data[node + 2] == NONE ? Optional.empty() : Optional.of((String) pool[data[node + 2]]),
+                        () -> {
+                            List<Ast.Statement> body = new ArrayList<>();
+                            for (int i = 0; i < data[statements]; i++) {
+                                body.add((Ast.Statement) get(data[statements + 1 + i]));
+                            }
+                            return body;
+                        });
+                if (data[node + 3] != NONE) {
+                    method.setFunction((Environment.Function) pool[data[node + 3]]);
+                }
+                return method;
+            }
+            case EXPRESSION:
+                return new Ast.Statement.Expression((Ast.Expression) children.get(0));
+            case DECLARATION: {
+                Ast.Statement.Declaration declaration = new Ast.Statement.Declaration(getName(node),
+                        data[node + 2] == NONE ? Optional.empty() : Optional.of((String) pool[data[node + 2]]),
+                        Optional.ofNullable((Ast.Expression) children.get(0)));
+                if (data[node + 4] != NONE) {
+                    declaration.setVariable((Environment.Variable) pool[data[node + 4]]);
+                }
+                return declaration;
+            }
+            case ASSIGNMENT:
+                return new Ast.Statement.Assignment((Ast.Expression) children.get(0), (Ast.Expression) children.get(1));
+            case IF: {
+                int thenStatements = data[node + 2];
+                return new Ast.Statement.If((Ast.Expression) children.get(0),
+                        list(children, 1, 1 + thenStatements), list(children, 1 + thenStatements, children.size()));
+            }
+            case FOR:
+                return new Ast.Statement.For((Ast.Statement) children.get(0), (Ast.Expression) children.get(1),
+                        (Ast.Statement) children.get(2), list(children, 3, children.size()));
+            case WHILE:
+                return new Ast.Statement.While((Ast.Expression) children.get(0), list(children, 1, children.size()));
+            case RETURN:
+                return new Ast.Statement.Return((Ast.Expression) children.get(0));
+            case LITERAL: {
+                Ast.Expression.Literal literal = new Ast.Expression.Literal(getLiteral(node));
+                if (data[node + 2] != NONE) {
+                    literal.setType((Environment.Type) pool[data[node + 2]]);
+                }
+                return literal;
+            }
+            case GROUP: {
+                Ast.Expression.Group group = new Ast.Expression.Group((Ast.Expression) children.get(0));
+                if (data[node + 2] != NONE) {
+                    group.setType((Environment.Type) pool[data[node + 2]]);
+                }
+                return group;
+            }
+            case BINARY: {
+                Ast.Expression.Binary binary = new Ast.Expression.Binary(getOperator(node),
+                        (Ast.Expression) children.get(0), (Ast.Expression) children.get(1));
+                if (data[node + 4] != NONE) {
+                    binary.setType((Environment.Type) pool[data[node + 4]]);
+                }
+                return binary;
+            }
+            case ACCESS: {
+                Ast.Expression.Access access = new Ast.Expression.Access(
+                        Optional.ofNullable((Ast.Expression) children.get(0)), getName(node));
+                if (data[node + 3] != NONE) {
+                    access.setVariable((Environment.Variable) pool[data[node + 3]]);
+                }
+                return access;
+            }
+            case FUNCTION: {
+                Ast.Expression.Function function = new Ast.Expression.Function(
+                        Optional.ofNullable((Ast.Expression) children.get(0)), getName(node), list(children, 1, children.size()));
+                if (data[node + 3] != NONE) {
+                    function.setFunction((Environment.Function) pool[data[node + 3]]);
+                }
+                return function;
+            }
+            default:
+                throw new AssertionError("Unimplemented kind: " + getKind(node) + ".");
+        }
+    }
+
+    /**
+     * Returns the strings of the pooled list at {@code list}.
+     */
+    private List<String> strings(int list) {
+        List<String> strings = new ArrayList<>();
+        for (int i = 0; i < data[list]; i++) {
+            strings.add((String) pool[data[list + 1 + i]]);
+        }
+        return strings;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Ast> List<T> list(List<Ast> children, int from, int to) {
+        List<T> list = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            list.add((T) children.get(i));
+        }
+        return list;
+    }
+
+
+    /**
+     * Writes the encoding in a binary format, which starts with a magic
+     * number and {@link #VERSION}. Names and literals are written as they are.
+     * Types are written by name, and variables and functions by their name,
+     * JVM name, and types, as that is all the {@link Generator} uses.
+     */
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(root);
+        out.writeInt(data.length);
+        ByteBuffer ints = ByteBuffer.allocate(4 * data.length);
+        ints.asIntBuffer().put(data);
+        out.write(ints.array());
+        out.writeInt(pool.length);
+        for (Object value : pool) {
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof String) {
+                out.writeByte(STRING);
+                writeString(out, (String) value);
+            } else if (value instanceof BigInteger) {
+                out.writeByte(INTEGER);
+                writeBytes(out, ((BigInteger) value).toByteArray());
+            } else if (value instanceof BigDecimal) {
+                out.writeByte(DECIMAL);
+                writeBytes(out, ((BigDecimal) value).unscaledValue().toByteArray());
+                out.writeInt(((BigDecimal) value).scale());
+            } else if (value instanceof Character) {
+                out.writeByte(CHARACTER);
+                out.writeChar((Character) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof Environment.Type) {
+                out.writeByte(TYPE);
+                writeType(out, (Environment.Type) value);
+            } else if (value instanceof Environment.Variable) {
+                Environment.Variable variable = (Environment.Variable) value;
+                out.writeByte(VARIABLE);
+                writeString(out, variable.getName());
+                writeString(out, variable.getJvmName());
+                writeType(out, variable.getType());
+                out.writeBoolean(variable.getConstant());
+            } else if (value instanceof Environment.Function) {
+                Environment.Function function = (Environment.Function) value;
+                out.writeByte(FUNCTION);
+                writeString(out, function.getName());
+                writeString(out, function.getJvmName());
+                out.writeInt(function.getParameterTypes().size());
+                for (Environment.Type type : function.getParameterTypes()) {
+                    writeType(out, type);
+                }
+                writeType(out, function.getReturnType());
+            } else {
+                throw new IllegalStateException("Unsupported value " + value + ".");
+            }
+        }
+        out.flush();
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        writeBytes(out, string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeType(DataOutputStream out, Environment.Type type) throws IOException {
+        writeString(out, type.getName());
+        writeString(out, type.getJvmName());
+    }
+
+    /**
+     * Reads an encoding written by {@link #write(OutputStream)} from a file,
+     * which is memory-mapped rather than copied.
+     */
+    public static FlatAst read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads an encoding written by {@link #write(OutputStream)}, throwing an
+     * {@link IllegalArgumentException} if the data is not in the format of
+     * this {@link #VERSION} or does not encode a well-formed tree.
+     *
+     * Registered types are resolved with {@link Environment#getType(String)},
+     * and other types are recreated once each. Variables and functions are
+     * recreated with their types, with a value of {@link Environment#NIL} and
+     * a function returning it, like the built-in functions of the {@link
+     * Environment}. Nodes which shared a variable or function still do.
+     */
+    public static FlatAst read(ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not an encoded AST.");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported version " + version + ", expected " + VERSION + ".");
+            }
+            int root = buffer.getInt();
+            int[] data = new int[readLength(buffer, 4)];
+            buffer.asIntBuffer().get(data);
+            buffer.position(buffer.position() + 4 * data.length);
+            Object[] pool = new Object[readLength(buffer, 1)];
+            Map<String, Environment.Type> types = new HashMap<>();
+            for (int i = 0; i < pool.length; i++) {
+                byte tag = buffer.get();
+                switch (tag) {
+                    case NULL:
+                        break;
+                    case STRING:
+                        pool[i] = readString(buffer);
+                        break;
+                    case INTEGER:
+                        pool[i] = new BigInteger(readBytes(buffer));
+                        break;
+                    case DECIMAL:
+                        pool[i] = new BigDecimal(new BigInteger(readBytes(buffer)), buffer.getInt());
+                        break;
+                    case CHARACTER:
+                        pool[i] = buffer.getChar();
+                        break;
+                    case BOOLEAN:
+                        pool[i] = buffer.get() != 0;
+                        break;
+                    case TYPE:
+                        pool[i] = readType(buffer, types);
+                        break;
+                    case VARIABLE:
+                        pool[i] = new Environment.Variable(readString(buffer), readString(buffer),
+                                readType(buffer, types), buffer.get() != 0, Environment.NIL);
+                        break;
+                    case FUNCTION: {
+                        String name = readString(buffer);
+                        String jvmName = readString(buffer);
+                        List<Environment.Type> parameterTypes = new ArrayList<>();
+                        for (int count = buffer.getInt(); count > 0; count--) {
+                            parameterTypes.add(readType(buffer, types));
+                        }
+                        pool[i] = new Environment.Function(name, jvmName, parameterTypes, readType(buffer, types), args -> Environment.NIL);
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("Invalid value tag " + tag + ".");
+                }
+            }
+            FlatAst ast = new FlatAst(data, pool, root);
+            ast.validate();
+            return ast;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated AST data.", e);
+        }
+    }
+
+    /**
+     * Reads a length, checking that that many entries of {@code size} bytes
+     * each can remain in the buffer.
+     */
+    private static int readLength(ByteBuffer buffer, int size) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining() / size) {
+            throw new IllegalArgumentException("Invalid length " + length + " in AST data.");
+        }
+        return length;
+    }
+
+    private static final EnumSet<Kind> STATEMENTS = EnumSet.range(Kind.EXPRESSION, Kind.RETURN);
+    private static final EnumSet<Kind> EXPRESSIONS = EnumSet.range(Kind.LITERAL, Kind.FUNCTION);
+
+    /**
+     * Checks that the nodes reachable from the root form a tree of well-formed
+     * nodes, so that {@link #get(int)} and the other accessors cannot fail on
+     * data which was read, including for method bodies decoded later. As
+     * written by {@link #of(Ast)}, every child comes before its parent and
+     * belongs to only one, which also rules out cycles.
+     */
+    private void validate() {
+        boolean[] reached = new boolean[data.length];
+        List<Integer> pending = new ArrayList<>();
+        check(root >= 0 && root < data.length, "root " + root);
+        reached[root] = true;
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            int node = pending.remove(pending.size() - 1);
+            int tag = at(node);
+            check(tag >= 0 && tag < KINDS.length, "kind " + tag);
+            switch (KINDS[tag]) {
+                case SOURCE:
+                    checkChildren(node, checkChildren(node, node + 1, EnumSet.of(Kind.FIELD), reached, pending),
+                            EnumSet.of(Kind.METHOD), reached, pending);
+                    break;
+                case FIELD:
+                    checkValue(at(node + 1), String.class, false);
+                    checkValue(at(node + 2), String.class, false);
+                    at(node + 3);
+                    checkChild(node, at(node + 4), EXPRESSIONS, true, reached, pending);
+                    checkValue(at(node + 5), Environment.Variable.class, true);
+                    break;
+                case METHOD:
+                    checkValue(at(node + 1), String.class, false);
+                    checkValue(at(node + 2), String.class, true);
+                    checkValue(at(node + 3), Environment.Function.class, true);
+                    int parameters = at(node + 4);
+                    check(parameters >= 0 && at(node + 5 + parameters) == parameters, "parameters of " + node);
+                    for (int i = 0; i < 2 * parameters + 1; i++) {
+                        if (i != parameters) {
+                            checkValue(at(node + 5 + i), String.class, false);
+                        }
+                    }
+                    checkChildren(node, node + 6 + 2 * parameters, STATEMENTS, reached, pending);
+                    break;
+                case EXPRESSION:
+                case RETURN:
+                    checkChild(node, at(node + 1), EXPRESSIONS, false, reached, pending);
+                    break;
+                case DECLARATION:
+                    checkValue(at(node + 1), String.class, false);
+                    checkValue(at(node + 2), String.class, true);
+                    checkChild(node, at(node + 3), EXPRESSIONS, true, reached, pending);
+                    checkValue(at(node + 4), Environment.Variable.class, true);
+                    break;
+                case ASSIGNMENT:
+                    checkChild(node, at(node + 1), EXPRESSIONS, false, reached, pending);
+                    checkChild(node, at(node + 2), EXPRESSIONS, false, reached, pending);
+                    break;
+                case IF:
+                    checkChild(node, at(node + 1), EXPRESSIONS, false, reached, pending);
+                    checkChildren(node, checkChildren(node, node + 2, STATEMENTS, reached, pending), STATEMENTS, reached, pending);
+                    break;
+                case FOR:
+                    checkChild(node, at(node + 1), STATEMENTS, true, reached, pending);
+                    checkChild(node, at(node + 2), EXPRESSIONS, false, reached, pending);
+                    checkChild(node, at(node + 3), STATEMENTS, true, reached, pending);
+                    checkChildren(node, node + 4, STATEMENTS, reached, pending);
+                    break;
+                case WHILE:
+                    checkChild(node, at(node + 1), EXPRESSIONS, false, reached, pending);
+                    checkChildren(node, node + 2, STATEMENTS, reached, pending);
+                    break;
+                case LITERAL: {
+                    int literal = at(node + 1);
+                    check(literal >= 0 && literal < pool.length && (pool[literal] == null
+                            || pool[literal] instanceof String || pool[literal] instanceof BigInteger
+                            || pool[literal] instanceof BigDecimal || pool[literal] instanceof Character
+                            || pool[literal] instanceof Boolean), "literal of " + node);
+                    checkValue(at(node + 2), Environment.Type.class, true);
+                    break;
+                }
+                case GROUP:
+                    checkChild(node, at(node + 1), EXPRESSIONS, false, reached, pending);
+                    checkValue(at(node + 2), Environment.Type.class, true);
+                    break;
+                case BINARY:
+                    checkValue(at(node + 1), String.class, false);
+                    checkChild(node, at(node + 2), EXPRESSIONS, false, reached, pending);
+                    checkChild(node, at(node + 3), EXPRESSIONS, false, reached, pending);
+                    checkValue(at(node + 4), Environment.Type.class, true);
+                    break;
+                case ACCESS:
+                    checkChild(node, at(node + 1), EXPRESSIONS, true, reached, pending);
+                    checkValue(at(node + 2), String.class, false);
+                    checkValue(at(node + 3), Environment.Variable.class, true);
+                    break;
+                case FUNCTION:
+                    checkChild(node, at(node + 1), EXPRESSIONS, true, reached, pending);
+                    checkValue(at(node + 2), String.class, false);
+                    checkValue(at(node + 3), Environment.Function.class, true);
+                    checkChildren(node, node + 4, EXPRESSIONS, reached, pending);
+                    break;
+            }
+        }
+    }
+
+    private static void check(boolean condition, String part) {
+        if (!condition) {
+            throw new IllegalArgumentException("Invalid " + part + " in AST data.");
+        }
+    }
+
+    /**
+     * Returns the int at an index of the data, checking it is in bounds.
+     */
+    private int at(int index) {
+        check(index >= 0 && index < data.length, "index " + index);
+        return data[index];
+    }
+
+    private void checkValue(int value, Class<?> type, boolean optional) {
+        check(value == NONE ? optional : value >= 0 && value < pool.length && type.isInstance(pool[value]),
+                type.getSimpleName() + " value " + value);
+    }
+
+    private void checkChild(int node, int child, EnumSet<Kind> kinds, boolean optional, boolean[] reached, List<Integer> pending) {
+        if (child == NONE) {
+            check(optional, "missing child of " + node);
+            return;
+        }
+        check(child >= 0 && child < node && !reached[child], "child " + child + " of " + node);
+        int tag = data[child];
+        check(tag >= 0 && tag < KINDS.length && kinds.contains(KINDS[tag]), "kind of " + child);
+        reached[child] = true;
+        pending.add(child);
+    }
+
+    /**
+     * Checks the children in the list at {@code list}, returning the index
+     * after it.
+     */
+    private int checkChildren(int node, int list, EnumSet<Kind> kinds, boolean[] reached, List<Integer> pending) {
+        int count = at(list);
+        check(count >= 0 && count < data.length - list, "list at " + list);
+        for (int i = 0; i < count; i++) {
+            checkChild(node, data[list + 1 + i], kinds, false, reached, pending);
+        }
+        return list + 1 + count;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        return new String(readBytes(buffer), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[readLength(buffer, 1)];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static Environment.Type readType(ByteBuffer buffer, Map<String, Environment.Type> types) {
+        String name = readString(buffer);
+        String jvmName = readString(buffer);
+        return types.computeIfAbsent(name + ' ' + jvmName, key -> {
+            try {
+                Environment.Type type = Environment.getType(name);
+                if (type.getJvmName().equals(jvmName)) {
+                    return type;
+                }
+            } catch (RuntimeException ignored) {
+                // not a registered type
+            }
+            return new Environment.Type(name, jvmName, new Scope(null));
+        });
+    }
+
+}
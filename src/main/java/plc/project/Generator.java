@@ -1,5 +1,6 @@
 package plc.project;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.io.PrintWriter;
 import java.math.BigDecimal;
@@ -461,9 +462,7 @@ public final class Generator implements Ast.Visitor<Void> {
 
     @Override
     public Void visit(Ast.Expression.Group ast) {
-        print("(");
-        visit(ast.getExpression());
-        print(")");
+        printNested(ast);
         return null;
     }
 
@@ -498,18 +497,51 @@ public final class Generator implements Ast.Visitor<Void> {
 //            print("\"");
 //        }
 
-        // Visit and print the left expression
-        visit(ast.getLeft());
-
-        // Print the operator (e.g., + or &&)
-        print(" ", ast.getOperator(), " ");
-
-        // Visit and print the right expression
-        visit(ast.getRight());
-
+        printNested(ast);
         return null;
     }
 
+    /**
+     * Prints nested binary and group expressions with an explicit stack
+     * instead of recursion, so long chains of operators and deeply nested
+     * groups do not overflow the Java stack. Other expressions are visited
+     * as usual.
+     */
+    private void printNested(Ast.Expression expression) {
+        List<Ast.Expression> nodes = new ArrayList<>();
+        List<Boolean> printedLeft = new ArrayList<>();
+        Ast.Expression current = expression;
+        while (true) {
+            while (current instanceof Ast.Expression.Binary || current instanceof Ast.Expression.Group) {
+                if (current instanceof Ast.Expression.Group) {
+                    print("(");
+                }
+                nodes.add(current);
+                printedLeft.add(false);
+                current = current instanceof Ast.Expression.Binary
+                        ? ((Ast.Expression.Binary) current).getLeft()
+                        : ((Ast.Expression.Group) current).getExpression();
+            }
+            visit(current);
+            while (true) {
+                if (nodes.isEmpty()) {
+                    return;
+                }
+                int top = nodes.size() - 1;
+                if (nodes.get(top) instanceof Ast.Expression.Binary && !printedLeft.get(top)) {
+                    printedLeft.set(top, true);
+                    print(" ", ((Ast.Expression.Binary) nodes.get(top)).getOperator(), " ");
+                    current = ((Ast.Expression.Binary) nodes.get(top)).getRight();
+                    break;
+                } else if (nodes.get(top) instanceof Ast.Expression.Group) {
+                    print(")");
+                }
+                nodes.remove(top);
+                printedLeft.remove(top);
+            }
+        }
+    }
+
 
 
     @Override
@@ -0,0 +1,212 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses successive versions of a source, such as the {@link TokenBuffer}s
+ * from {@link Lexer#relex}, reusing the AST of the last successful parse.
+ * The token range of each field, method, and statement is kept, so after an
+ * edit only the smallest of them enclosing the changed tokens is parsed
+ * again. Every other node is reused by identity, keeping the variables,
+ * functions, and types the {@link Analyzer} set on them.
+ *
+ * Enclosing nodes are recreated around the reparsed one. A node is only
+ * reparsed if its first token is unchanged and it ends just before the same
+ * token as before, which means the parser makes the same decisions around
+ * it, so the result (including any {@link ParseException}) is the same as
+ * {@link Parser#parseSource()}. Otherwise, the next enclosing node is tried,
+ * and finally the whole source.
+ */
+public final class IncrementalParser {
+
+    private TokenBuffer tokens; // the tokens of the last successful parse
+    private Ast.Source source;
+    private Map<Ast, int[]> ranges;
+
+    /**
+     * Parses the tokens, reparsing only what changed since the last
+     * successful parse. If this throws, the next parse is still relative to
+     * the last successful one.
+     */
+    public Ast.Source parse(TokenBuffer tokens) throws ParseException {
+        if (source == null) {
+            Map<Ast, int[]> ranges = new IdentityHashMap<>();
+            Ast.Source source = new Parser(tokens, ranges).parseSource();
+            update(tokens, source, ranges);
+            return source;
+        }
+        int prefix = 0;
+        int limit = Math.min(this.tokens.size(), tokens.size());
+        while (prefix < limit && equals(this.tokens, prefix, tokens, prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < limit - prefix
+                && equals(this.tokens, this.tokens.size() - 1 - suffix, tokens, tokens.size() - 1 - suffix)) {
+            suffix++;
+        }
+        if (prefix == this.tokens.size() && prefix == tokens.size()) {
+            this.tokens = tokens;
+            return source;
+        }
+        int end = this.tokens.size() - suffix; // the end of the changed tokens before the edit
+        int shift = tokens.size() - this.tokens.size();
+        List<Ast> path = new ArrayList<>();
+        path.add(source);
+        for (Ast node = source; node != null; ) {
+            Ast parent = node;
+            node = null;
+            for (Ast child : children(parent)) {
+                int[] range = ranges.get(child);
+                if (range[0] < prefix && end <= range[1]) {
+                    path.add(child);
+                    node = child;
+                    break;
+                }
+            }
+        }
+        Map<Ast, int[]> reparsed = new IdentityHashMap<>();
+        for (int i = path.size() - 1; i > 0; i--) {
+            int[] range = ranges.get(path.get(i));
+            Parser parser = new Parser(tokens, reparsed);
+            Ast replacement = parser.reparse(path.get(i), range[0]);
+            if (parser.index() == range[1] + shift) {
+                for (int j = i - 1; j >= 0; j--) {
+                    replacement = replace(path.get(j), path.get(j + 1), replacement);
+                    if (j > 0) {
+                        int[] enclosing = ranges.get(path.get(j));
+                        reparsed.put(replacement, new int[] {enclosing[0], enclosing[1] + shift});
+                    }
+                }
+                Ast.Source source = (Ast.Source) replacement;
+                Map<Ast, int[]> ranges = new IdentityHashMap<>();
+                shift(source, reparsed, end, shift, ranges);
+                update(tokens, source, ranges);
+                return source;
+            }
+            reparsed.clear();
+        }
+        Map<Ast, int[]> ranges = new IdentityHashMap<>();
+        Ast.Source source = new Parser(tokens, ranges).parseSource();
+        update(tokens, source, ranges);
+        return source;
+    }
+
+    /**
+     * Returns the AST of the last successful parse, or {@code null} if there
+     * is none.
+     */
+    public Ast.Source getSource() {
+        return source;
+    }
+
+    private void update(TokenBuffer tokens, Ast.Source source, Map<Ast, int[]> ranges) {
+        this.tokens = tokens;
+        this.source = source;
+        this.ranges = ranges;
+    }
+
+    /**
+     * Returns true if two tokens have the same type and literal, regardless
+     * of where they are in the source.
+     */
+    private static boolean equals(TokenBuffer first, int i, TokenBuffer second, int j) {
+        return first.getType(i) == second.getType(j)
+                && first.getLength(i) == second.getLength(j)
+                && CharSequence.compare(first.getLiteralView(i), second.getLiteralView(j)) == 0;
+    }
+
+    /**
+     * Adds the ranges of the new tree to {@code ranges}. Nodes which were
+     * reparsed or recreated have their range in {@code reparsed}, and the
+     * others are moved by {@code shift} tokens if they are after the edit.
+     */
+    private void shift(Ast node, Map<Ast, int[]> reparsed, int end, int shift, Map<Ast, int[]> ranges) {
+        for (Ast child : children(node)) {
+            int[] range = reparsed.get(child);
+            if (range == null) {
+                range = this.ranges.get(child);
+                if (range[0] >= end) {
+                    range = new int[] {range[0] + shift, range[1] + shift};
+                }
+            }
+            ranges.put(child, range);
+            shift(child, reparsed, end, shift, ranges);
+        }
+    }
+
+    /**
+     * Returns the fields, methods, and statements directly within a node.
+     */
+    private static List<Ast> children(Ast ast) {
+        List<Ast> children = new ArrayList<>();
+        if (ast instanceof Ast.Source) {
+            children.addAll(((Ast.Source) ast).getFields());
+            children.addAll(((Ast.Source) ast).getMethods());
+        } else if (ast instanceof Ast.Method) {
+            children.addAll(((Ast.Method) ast).getStatements());
+        } else if (ast instanceof Ast.Statement.If) {
+            children.addAll(((Ast.Statement.If) ast).getThenStatements());
+            children.addAll(((Ast.Statement.If) ast).getElseStatements());
+        } else if (ast instanceof Ast.Statement.For) {
+            children.add(((Ast.Statement.For) ast).getInitialization());
+            children.add(((Ast.Statement.For) ast).getIncrement());
+            children.addAll(((Ast.Statement.For) ast).getStatements());
+        } else if (ast instanceof Ast.Statement.While) {
+            children.addAll(((Ast.Statement.While) ast).getStatements());
+        } else {
+            return Collections.emptyList();
+        }
+        return children;
+    }
+
+    /**
+     * Returns a copy of {@code parent} with {@code child} replaced by {@code
+     * replacement}.
+     */
+    private static Ast replace(Ast parent, Ast child, Ast replacement) {
+        if (parent instanceof Ast.Source) {
+            Ast.Source ast = (Ast.Source) parent;
+            return new Ast.Source(replace(ast.getFields(), child, replacement), replace(ast.getMethods(), child, replacement));
+        } else if (parent instanceof Ast.Method) {
+            Ast.Method ast = (Ast.Method) parent;
+            return new Ast.Method(ast.getName(), ast.getParameters(), ast.getParameterTypeNames(), ast.getReturnTypeName(),
+                    replace(ast.getStatements(), child, replacement));
+        } else if (parent instanceof Ast.Statement.If) {
+            Ast.Statement.If ast = (Ast.Statement.If) parent;
+            return new Ast.Statement.If(ast.getCondition(),
+                    replace(ast.getThenStatements(), child, replacement), replace(ast.getElseStatements(), child, replacement));
+        } else if (parent instanceof Ast.Statement.For) {
+            Ast.Statement.For ast = (Ast.Statement.For) parent;
+            return new Ast.Statement.For(
+                    ast.getInitialization() == child ? (Ast.Statement) replacement : ast.getInitialization(),
+                    ast.getCondition(),
+                    ast.getIncrement() == child ? (Ast.Statement) replacement : ast.getIncrement(),
+                    replace(ast.getStatements(), child, replacement));
+        } else if (parent instanceof Ast.Statement.While) {
+            Ast.Statement.While ast = (Ast.Statement.While) parent;
+            return new Ast.Statement.While(ast.getCondition(), replace(ast.getStatements(), child, replacement));
+        }
+        throw new AssertionError("Invalid parent: " + parent.getClass());
+    }
+
+    /**
+     * Returns a copy of the list with {@code child} (compared by identity)
+     * replaced by {@code replacement}.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Ast> List<T> replace(List<T> list, Ast child, Ast replacement) {
+        List<T> copy = new ArrayList<>(list);
+        for (int i = 0; i < copy.size(); i++) {
+            if (copy.get(i) == child) {
+                copy.set(i, (T) replacement);
+            }
+        }
+        return copy;
+    }
+
+}
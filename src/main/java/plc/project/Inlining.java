@@ -0,0 +1,452 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Replaces calls to small, non-recursive methods with their bodies, so the
+ * {@link Interpreter} does not create a scope and a list of arguments for
+ * each call and {@link ConstantFolding} can fold across calls.
+ *
+ * A method whose body is a single {@code RETURN} is inlined as an expression
+ * wherever its arguments are literals or variables, substituting them for
+ * its parameters. Variables are only substituted if the body calls nothing,
+ * so nothing can change them before they are used. Other methods are
+ * inlined where the call is a whole statement or the value of a
+ * declaration, assignment, or return, if their only {@code RETURN} is their
+ * last statement: the arguments are declared as fresh locals in order, the
+ * locals of the body are renamed to fresh names, and the returned value
+ * takes the place of the call. The body of a {@code FOR} is run in a single
+ * scope by the Interpreter, so nothing is declared there.
+ *
+ * Methods are inlined once per run, using their original bodies, and only if
+ * nothing they refer to is shadowed by the locals of the caller. Fields are
+ * left alone, since they are evaluated before any method is defined.
+ */
+public final class Inlining extends Pass {
+
+    /**
+     * The default maximum size of an inlined method, in statements and
+     * expressions.
+     */
+    public static final int DEFAULT_BUDGET = 24;
+
+    private final int budget;
+    private final Map<String, Candidate> candidates = new HashMap<>();
+    private final Set<String> names = new HashSet<>(); // every name in the source, to choose fresh names
+    private Set<String> locals = Set.of(); // the parameters and locals of the method being rewritten
+    private boolean loopBody = false; // whether the next block is the body of a FOR
+
+    public Inlining() {
+        this(DEFAULT_BUDGET);
+    }
+
+    /**
+     * Creates an inlining pass for methods of at most {@code budget}
+     * statements and expressions.
+     */
+    public Inlining(int budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public String getName() {
+        return "inlining";
+    }
+
+    /**
+     * A method which may be inlined, with the names it uses.
+     */
+    private static final class Candidate {
+
+        private final Ast.Method method;
+        private final Scan scan;
+
+        private Candidate(Ast.Method method, Scan scan) {
+            this.method = method;
+            this.scan = scan;
+        }
+
+        /**
+         * Returns the value of the final {@code RETURN}, or {@code null} if
+         * there is none.
+         */
+        private Ast.Expression getValue() {
+            List<Ast.Statement> statements = method.getStatements();
+            return scan.returns == 1 ? ((Ast.Statement.Return) statements.get(statements.size() - 1)).getValue() : null;
+        }
+
+    }
+
+    @Override
+    public Ast visit(Ast.Source ast) {
+        candidates.clear();
+        names.clear();
+        Map<String, Scan> scans = new HashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        for (Ast.Method method : ast.getMethods()) {
+            Scan scan = new Scan();
+            scan.visit(method);
+            scans.put(key(method), scan);
+            counts.merge(key(method), 1, Integer::sum);
+            names.add(method.getName());
+            names.addAll(method.getParameters());
+            names.addAll(scan.accesses);
+            names.addAll(scan.declarations);
+        }
+        for (Ast.Field field : ast.getFields()) {
+            Scan scan = new Scan();
+            scan.visit(field);
+            names.add(field.getName());
+            names.addAll(scan.accesses);
+        }
+        for (Ast.Method method : ast.getMethods()) {
+            Scan scan = scans.get(key(method));
+            List<Ast.Statement> statements = method.getStatements();
+            if (counts.get(key(method)) == 1 && scan.size <= budget && !isRecursive(key(method), scans)
+                    && (scan.returns == 0 || scan.returns == 1 && !statements.isEmpty()
+                    && statements.get(statements.size() - 1) instanceof Ast.Statement.Return)) {
+                candidates.put(key(method), new Candidate(method, scan));
+            }
+        }
+        return super.visit(ast);
+    }
+
+    private static String key(Ast.Method method) {
+        return method.getName() + "/" + method.getParameters().size();
+    }
+
+    private static boolean isRecursive(String key, Map<String, Scan> scans) {
+        Set<String> reached = new HashSet<>();
+        List<String> pending = new ArrayList<>(scans.get(key).calls);
+        while (!pending.isEmpty()) {
+            String next = pending.remove(pending.size() - 1);
+            if (next.equals(key)) {
+                return true;
+            } else if (scans.containsKey(next) && reached.add(next)) {
+                pending.addAll(scans.get(next).calls);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Ast visit(Ast.Field ast) {
+        return ast;
+    }
+
+    @Override
+    public Ast visit(Ast.Method ast) {
+        Scan scan = new Scan();
+        scan.visit(ast);
+        locals = new HashSet<>(ast.getParameters());
+        locals.addAll(scan.declarations);
+        return super.visit(ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.For ast) {
+        loopBody = true;
+        try {
+            return super.visit(ast);
+        } finally {
+            loopBody = false;
+        }
+    }
+
+    @Override
+    protected List<Ast.Statement> visitStatements(List<Ast.Statement> statements) {
+        boolean declare = !loopBody;
+        loopBody = false;
+        List<Ast.Statement> result = null;
+        for (int i = 0; i < statements.size(); i++) {
+            List<Ast.Statement> inlined = declare ? inline(statements.get(i)) : null;
+            Ast.Statement statement = inlined == null ? (Ast.Statement) visit(statements.get(i)) : null;
+            if (result == null && statement != statements.get(i)) {
+                result = new ArrayList<>(statements.subList(0, i));
+            }
+            if (inlined != null) {
+                result.addAll(inlined);
+            } else if (result != null) {
+                result.add(statement);
+            }
+        }
+        return result != null ? result : statements;
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Expression ast) {
+        if (ast.getExpression() instanceof Ast.Expression.Function) {
+            // the Analyzer requires a call here, so it cannot be inlined as an expression
+            Ast.Expression call = visitCall((Ast.Expression.Function) ast.getExpression(), false);
+            return call != ast.getExpression() ? new Ast.Statement.Expression(call) : ast;
+        }
+        return super.visit(ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Function ast) {
+        return visitCall(ast, true);
+    }
+
+    private Ast.Expression visitCall(Ast.Expression.Function ast, boolean inline) {
+        Ast.Expression.Function call = (Ast.Expression.Function) super.visit(ast);
+        Candidate candidate = getCandidate(call);
+        if (!inline || candidate == null || !isExpression(candidate, call)) {
+            return call;
+        }
+        Map<String, Ast.Expression> values = new HashMap<>();
+        for (int i = 0; i < call.getArguments().size(); i++) {
+            values.put(candidate.method.getParameters().get(i), call.getArguments().get(i));
+        }
+        return changed((Ast.Expression) new Substitution(values, Map.of()).visit(candidate.getValue()));
+    }
+
+    private Candidate getCandidate(Ast.Expression.Function call) {
+        if (call.getReceiver().isPresent()) {
+            return null;
+        }
+        Candidate candidate = candidates.get(call.getName() + "/" + call.getArguments().size());
+        if (candidate == null || candidate.scan.accesses.stream().anyMatch(name -> locals.contains(name)
+                && !candidate.method.getParameters().contains(name) && !candidate.scan.declarations.contains(name))) {
+            return null; // the caller shadows a field the method uses
+        }
+        return candidate;
+    }
+
+    /**
+     * Returns whether a call can be replaced by the returned value of the
+     * method with its arguments substituted.
+     */
+    private static boolean isExpression(Candidate candidate, Ast.Expression.Function call) {
+        if (candidate.method.getStatements().size() != 1 || candidate.getValue() == null
+                || candidate.getValue().getType() != candidate.method.getFunction().getReturnType()) {
+            return false;
+        }
+        List<Environment.Type> types = candidate.method.getFunction().getParameterTypes();
+        for (int i = 0; i < call.getArguments().size(); i++) {
+            Ast.Expression argument = call.getArguments().get(i);
+            if (!(argument instanceof Ast.Expression.Literal || argument instanceof Ast.Expression.Access
+                    && !((Ast.Expression.Access) argument).getReceiver().isPresent() && candidate.scan.calls.isEmpty())
+                    || argument.getType() != types.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the statements replacing a statement whose value is a call, or
+     * {@code null} if it is not inlined here.
+     */
+    private List<Ast.Statement> inline(Ast.Statement statement) {
+        Ast.Expression value = null;
+        if (statement instanceof Ast.Statement.Expression) {
+            value = ((Ast.Statement.Expression) statement).getExpression();
+        } else if (statement instanceof Ast.Statement.Declaration) {
+            value = ((Ast.Statement.Declaration) statement).getValue().orElse(null);
+        } else if (statement instanceof Ast.Statement.Assignment) {
+            value = ((Ast.Statement.Assignment) statement).getValue();
+        } else if (statement instanceof Ast.Statement.Return) {
+            value = ((Ast.Statement.Return) statement).getValue();
+        }
+        if (!(value instanceof Ast.Expression.Function)) {
+            return null;
+        }
+        Ast.Expression.Function call = (Ast.Expression.Function) value;
+        Candidate candidate = getCandidate(call);
+        if (candidate == null || !(statement instanceof Ast.Statement.Expression) && isExpression(candidate, call)) {
+            return null;
+        }
+        Ast.Expression returned = candidate.getValue();
+        if (returned == null ? !(statement instanceof Ast.Statement.Expression)
+                : returned.getType() != candidate.method.getFunction().getReturnType()) {
+            return null;
+        }
+        List<Ast.Statement> result = new ArrayList<>();
+        Map<String, String> renames = new HashMap<>();
+        List<Environment.Type> types = candidate.method.getFunction().getParameterTypes();
+        for (int i = 0; i < call.getArguments().size(); i++) {
+            String name = fresh(candidate.method.getParameters().get(i));
+            renames.put(candidate.method.getParameters().get(i), name);
+            Ast.Statement.Declaration parameter = new Ast.Statement.Declaration(name,
+                    Optional.of(candidate.method.getParameterTypeNames().get(i)),
+                    Optional.of((Ast.Expression) visit(call.getArguments().get(i))));
+            parameter.setVariable(new Environment.Variable(name, name, types.get(i), false, Environment.NIL));
+            result.add(parameter);
+        }
+        for (String name : candidate.scan.declarations) {
+            renames.computeIfAbsent(name, this::fresh);
+        }
+        Substitution substitution = new Substitution(Map.of(), renames);
+        List<Ast.Statement> body = candidate.method.getStatements();
+        for (int i = 0; i < body.size() - (returned != null ? 1 : 0); i++) {
+            result.add((Ast.Statement) substitution.visit(body.get(i)));
+        }
+        if (returned != null) {
+            returned = (Ast.Expression) substitution.visit(returned);
+            if (statement instanceof Ast.Statement.Expression) {
+                if (returned instanceof Ast.Expression.Function) {
+                    result.add(new Ast.Statement.Expression(returned));
+                } else {
+                    String name = fresh(candidate.method.getName());
+                    Ast.Statement.Declaration declaration = new Ast.Statement.Declaration(name, Optional.empty(), Optional.of(returned));
+                    declaration.setVariable(new Environment.Variable(name, name, returned.getType(), false, Environment.NIL));
+                    result.add(declaration);
+                }
+            } else if (statement instanceof Ast.Statement.Declaration) {
+                Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) statement;
+                result.add(annotate(new Ast.Statement.Declaration(declaration.getName(), declaration.getTypeName(), Optional.of(returned)), declaration));
+            } else if (statement instanceof Ast.Statement.Assignment) {
+                result.add(new Ast.Statement.Assignment(((Ast.Statement.Assignment) statement).getReceiver(), returned));
+            } else {
+                result.add(new Ast.Statement.Return(returned));
+            }
+        }
+        changed(call);
+        return result;
+    }
+
+    /**
+     * Returns a name based on another which is not used anywhere in the
+     * source.
+     */
+    private String fresh(String name) {
+        for (int i = 1; ; i++) {
+            if (names.add(name + "_" + i)) {
+                return name + "_" + i;
+            }
+        }
+    }
+
+    /**
+     * Collects the names, calls, and size of an AST without rewriting
+     * anything.
+     */
+    private static final class Scan extends Pass {
+
+        private final Set<String> accesses = new HashSet<>();
+        private final Set<String> declarations = new HashSet<>();
+        private final Set<String> calls = new HashSet<>();
+        private int returns = 0;
+        private int size = 0;
+
+        @Override
+        public String getName() {
+            return "scan";
+        }
+
+        @Override
+        protected List<Ast.Statement> visitStatements(List<Ast.Statement> statements) {
+            size += statements.size();
+            return super.visitStatements(statements);
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.Declaration ast) {
+            declarations.add(ast.getName());
+            return super.visit(ast);
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.Return ast) {
+            returns++;
+            return super.visit(ast);
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Literal ast) {
+            size++;
+            return ast;
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Access ast) {
+            size++;
+            if (!ast.getReceiver().isPresent()) {
+                accesses.add(ast.getName());
+            }
+            return super.visit(ast);
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Function ast) {
+            size++;
+            if (!ast.getReceiver().isPresent()) {
+                calls.add(ast.getName() + "/" + ast.getArguments().size());
+            }
+            return super.visit(ast);
+        }
+
+        @Override
+        protected Ast.Expression rewrite(Ast.Expression.Group ast, Ast.Expression expression) {
+            size++;
+            return ast;
+        }
+
+        @Override
+        protected Ast.Expression rewrite(Ast.Expression.Binary ast, Ast.Expression left, Ast.Expression right) {
+            size++;
+            return ast;
+        }
+
+    }
+
+    /**
+     * Replaces parameters with values and renames locals in an inlined
+     * body, giving renamed variables the annotations the {@link Analyzer}
+     * gives locals.
+     */
+    private static final class Substitution extends Pass {
+
+        private final Map<String, Ast.Expression> values;
+        private final Map<String, String> renames;
+
+        private Substitution(Map<String, Ast.Expression> values, Map<String, String> renames) {
+            this.values = values;
+            this.renames = renames;
+        }
+
+        @Override
+        public String getName() {
+            return "substitution";
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.Declaration ast) {
+            Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) super.visit(ast);
+            String name = renames.get(ast.getName());
+            if (name == null) {
+                return declaration;
+            }
+            Ast.Statement.Declaration renamed = new Ast.Statement.Declaration(name, declaration.getTypeName(), declaration.getValue());
+            renamed.setVariable(new Environment.Variable(name, name, ast.getVariable().getType(), false, Environment.NIL));
+            return renamed;
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Access ast) {
+            if (ast.getReceiver().isPresent()) {
+                return super.visit(ast);
+            } else if (values.containsKey(ast.getName())) {
+                Ast.Expression value = values.get(ast.getName());
+                return value instanceof Ast.Expression.Literal
+                        ? annotate(new Ast.Expression.Literal(((Ast.Expression.Literal) value).getLiteral()), value)
+                        : annotate(new Ast.Expression.Access(Optional.empty(), ((Ast.Expression.Access) value).getName()), value);
+            } else if (renames.containsKey(ast.getName())) {
+                String name = renames.get(ast.getName());
+                Ast.Expression.Access renamed = new Ast.Expression.Access(Optional.empty(), name);
+                renamed.setVariable(new Environment.Variable(name, name, ast.getVariable().getType(), false, Environment.NIL));
+                return renamed;
+            }
+            return ast;
+        }
+
+    }
+
+}
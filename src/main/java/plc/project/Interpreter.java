@@ -1,7 +1,12 @@
 package plc.project;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
+    private static final int MAIN = Symbols.intern("main");
+
     private Scope scope = new Scope(null);
 
     public Interpreter(Scope parent) {
@@ -24,7 +29,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         for (Ast.Method method : ast.getMethods()) {
             visit(method);
         }
-        return scope.lookupFunction("main", 0).invoke(new java.util.ArrayList<>());
+        return scope.lookupFunction(MAIN, 0).invoke(new java.util.ArrayList<>());
     }
 
     @Override
@@ -37,13 +42,14 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     @Override
     public Environment.PlcObject visit(Ast.Method ast) {
         Scope definitionScope = scope; // Capture the scope at definition time
+        int[] parameters = ast.getParameters().stream().mapToInt(Symbols::intern).toArray();
 
         scope.defineFunction(ast.getName(), ast.getParameters().size(), args -> {
             Scope functionScope = new Scope(definitionScope); // Use the captured definition scope
 
             // Define parameters in the function scope
-            for (int i = 0; i < ast.getParameters().size(); i++) {
-                functionScope.defineVariable(ast.getParameters().get(i), true, args.get(i));
+            for (int i = 0; i < parameters.length; i++) {
+                functionScope.defineVariable(parameters[i], ast.getParameters().get(i), Environment.Type.ANY, true, args.get(i));
             }
 
             Scope previousScope = scope;
@@ -96,7 +102,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     @Override
     public Environment.PlcObject visit(Ast.Statement.Declaration ast) {
         Environment.PlcObject value = ast.getValue().isPresent() ? visit(ast.getValue().get()) : Environment.NIL;
-        scope.defineVariable(ast.getName(), true, value);
+        scope.defineVariable(ast.getSymbol(), ast.getName(), Environment.Type.ANY, true, value);
         return Environment.NIL;
     }
 
@@ -110,9 +116,9 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
         if (receiver.getReceiver().isPresent()) {
             Environment.PlcObject object = visit(receiver.getReceiver().get());
-            object.setField(receiver.getName(), value);
+            object.setField(receiver.getSymbol(), value);
         } else {
-            scope.lookupVariable(receiver.getName()).setValue(value);
+            scope.lookupVariable(receiver.getSymbol()).setValue(value);
         }
         return Environment.NIL;
     }
@@ -200,17 +206,60 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.Group ast) {
-        return visit(ast.getExpression());
+        return evaluateNested(ast);
     }
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.Binary ast) {
-        Environment.PlcObject leftObject = visit(ast.getLeft());
-        if (ast.getOperator().equals("||"))
-            if (leftObject.getValue().equals(true))
-                return Environment.create(requireType(Boolean.class, leftObject));
-        Environment.PlcObject rightObject = visit(ast.getRight());
+        return evaluateNested(ast);
+    }
 
+    /**
+     * Evaluates nested binary and group expressions with an explicit stack
+     * instead of recursion, so long chains of operators and deeply nested
+     * groups do not overflow the Java stack. Other expressions are visited
+     * as usual, and the order of evaluation is the same as recursing.
+     */
+    private Environment.PlcObject evaluateNested(Ast.Expression expression) {
+        List<Ast.Expression> nodes = new ArrayList<>();
+        List<Environment.PlcObject> lefts = new ArrayList<>(); // null until the left of the binary is evaluated
+        Ast.Expression current = expression;
+        while (true) {
+            while (current instanceof Ast.Expression.Binary || current instanceof Ast.Expression.Group) {
+                nodes.add(current);
+                lefts.add(null);
+                current = current instanceof Ast.Expression.Binary
+                        ? ((Ast.Expression.Binary) current).getLeft()
+                        : ((Ast.Expression.Group) current).getExpression();
+            }
+            Environment.PlcObject value = visit(current);
+            while (true) {
+                if (nodes.isEmpty()) {
+                    return value;
+                }
+                int top = nodes.size() - 1;
+                if (nodes.get(top) instanceof Ast.Expression.Binary && lefts.get(top) == null) {
+                    Ast.Expression.Binary binary = (Ast.Expression.Binary) nodes.get(top);
+                    if (binary.getOperator().equals("||") && value.getValue().equals(true)) {
+                        value = Environment.create(requireType(Boolean.class, value));
+                    } else {
+                        lefts.set(top, value);
+                        current = binary.getRight();
+                        break;
+                    }
+                } else if (nodes.get(top) instanceof Ast.Expression.Binary) {
+                    value = evaluate((Ast.Expression.Binary) nodes.get(top), lefts.get(top), value);
+                }
+                nodes.remove(top);
+                lefts.remove(top);
+            }
+        }
+    }
+
+    /**
+     * Evaluates a binary expression given the values of both sides.
+     */
+    private Environment.PlcObject evaluate(Ast.Expression.Binary ast, Environment.PlcObject leftObject, Environment.PlcObject rightObject) {
         switch (ast.getOperator()) {
             case "&&":
                 return Environment.create(requireType(Boolean.class, leftObject) && requireType(Boolean.class, rightObject));
@@ -286,13 +335,13 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             Environment.PlcObject receiverObject = visit(ast.getReceiver().get());
 
             // Retrieve the field from the receiver using getField which returns a Variable
-            Environment.Variable variable = receiverObject.getField(ast.getName());
+            Environment.Variable variable = receiverObject.getField(ast.getSymbol());
 
             // Return the PlcObject from the retrieved variable
             return variable.getValue(); // Assuming this returns the PlcObject
         } else {
             // Lookup the variable directly
-            Environment.Variable variable = scope.lookupVariable(ast.getName());
+            Environment.Variable variable = scope.lookupVariable(ast.getSymbol());
             if (variable == null) {
                 throw new RuntimeException("Undefined variable: " + ast.getName());
             }
@@ -304,8 +353,8 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     @Override
     public Environment.PlcObject visit(Ast.Expression.Function ast) {
         Environment.PlcObject receiver = ast.getReceiver().isPresent() ? visit(ast.getReceiver().get()) : null;
-        return receiver != null ? receiver.callMethod(ast.getName(), ast.getArguments().stream().map(this::visit).toList())
-                : scope.lookupFunction(ast.getName(), ast.getArguments().size())
+        return receiver != null ? receiver.callMethod(ast.getSymbol(), ast.getArguments().stream().map(this::visit).toList())
+                : scope.lookupFunction(ast.getSymbol(), ast.getArguments().size())
                 .invoke(ast.getArguments().stream().map(this::visit).toList());
     }
 
@@ -1,7 +1,28 @@
 package plc.project;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 
 /**
@@ -14,38 +35,437 @@ import java.util.List;
  * If the lexer fails to parse something (such as an unterminated string) you
  * should throw a {@link ParseException} with an index at the invalid character.
  *
- * The {@link #peek(String...)} and {@link #match(String...)} functions are
- * helpers you need to use, they will make the implementation easier.
+ * Characters are classified through the precomputed {@link #CLASSES} table
+ * rather than by matching regexes, so scanning does not allocate per
+ * character. The regex based {@link #peek(String...)} and {@link
+ * #match(String...)} helpers are kept for callers that rely on them.
+ *
+ * Besides a {@link String}, the lexer can read from a {@link Reader} or a
+ * {@link ReadableByteChannel} through a {@link ReaderCharStream}, or from a
+ * memory mapped file through a {@link MappedCharStream}. In these cases
+ * {@link #tokens()} lexes one token at a time as the parser asks for them.
  */
 public final class Lexer {
 
+    private static final int WHITESPACE = 1;
+    private static final int IDENTIFIER_START = 1 << 1;
+    private static final int IDENTIFIER_PART = 1 << 2;
+    private static final int DIGIT = 1 << 3;
+    private static final int SIGN = 1 << 4;
+    private static final int OPERATOR_START = 1 << 5;
+    private static final int OPERATOR = 1 << 6;
+    private static final int ESCAPE = 1 << 7;
+
+    /**
+     * Character classes for ASCII characters, indexed by the character. Any
+     * character outside of this table belongs to no class.
+     */
+    private static final byte[] CLASSES = new byte[128];
+
+    static {
+        classify(WHITESPACE, " \b\n\r\t");
+        for (char c = 'A'; c <= 'Z'; c++) {
+            classify(IDENTIFIER_START | IDENTIFIER_PART, String.valueOf(c));
+            classify(IDENTIFIER_START | IDENTIFIER_PART, String.valueOf(Character.toLowerCase(c)));
+        }
+        classify(IDENTIFIER_START | IDENTIFIER_PART, "_");
+        classify(IDENTIFIER_PART | DIGIT, "0123456789");
+        classify(IDENTIFIER_PART | SIGN, "-");
+        classify(SIGN, "+");
+        // lexToken() hands these off to lexOperator(); '/' through '\' is a range.
+        classify(OPERATOR_START, "|,:;!@#$%^&*()=<>+.");
+        for (char c = '/'; c <= '\\'; c++) {
+            classify(OPERATOR_START, String.valueOf(c));
+        }
+        classify(OPERATOR, ".,:;!@#$%^&*()+=/<>-");
+        classify(ESCAPE, "bnrt'\"\\");
+    }
+
+    private static void classify(int charClass, String characters) {
+        for (int i = 0; i < characters.length(); i++) {
+            CLASSES[characters.charAt(i)] |= charClass;
+        }
+    }
+
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
     private final CharStream chars;
 
+    // The value of the last number scanned, as the unscaled value and scale of
+    // its digits, and whether the value fit in a long (see scanNumber()).
+    private long number;
+    private int scale;
+    private boolean exact;
+    // The binary operator of the last operator scanned, if any (see scanOperator()).
+    private Token.Operator operator;
+
     public Lexer(String input) {
         chars = new CharStream(input);
     }
 
+    /**
+     * Reads the input through a {@link ReaderCharStream}, whose buffer grows
+     * with the position of signed numbers (see {@link BufferedCharStream}).
+     */
+    public Lexer(Reader reader) {
+        this(new ReaderCharStream(reader, ReaderCharStream.DEFAULT_BUFFER_SIZE));
+    }
+
+    /**
+     * Lexes the file at the given path as UTF-8, reading it through a {@link
+     * MappedCharStream}, whose buffer grows with the position of signed
+     * numbers (see {@link BufferedCharStream}).
+     */
+    public Lexer(Path path) throws IOException {
+        this(new MappedCharStream(path));
+    }
+
+    /**
+     * Reads the channel as UTF-8.
+     */
+    public Lexer(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8));
+    }
+
+    public Lexer(CharStream chars) {
+        this.chars = chars;
+    }
+
     /**
      * Repeatedly lexes the input using {@link #lexToken()}, also skipping over
      * whitespace where appropriate.
      */
     public List<Token> lex() {
         List<Token> tokens = new ArrayList<>();
-        while(chars.has(0)) {
-            while(peek("[ \b\n\r\t]")){
-                chars.advance();
-                chars.length = 0; //Ensures that the whitespace or escape character are not included in the token
+        Token token;
+        while ((token = lexNext()) != null) {
+            tokens.add(token);
+        }
+        return tokens;
+    }
+
+    /**
+     * Lexes the input into a {@link TokenBuffer}, which stores the type and
+     * position of each token without creating {@link Token} objects. This
+     * requires the input to be available as a {@link String}.
+     */
+    public TokenBuffer lexBuffer() {
+        String source = chars.source();
+        if (source == null) {
+            throw new UnsupportedOperationException("Lexing into a token buffer requires the whole input.");
+        }
+        TokenBuffer buffer = new TokenBuffer(source);
+        while (skipWhitespace()) {
+            scanInto(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Lexes the input into a {@link TokenBuffer} like {@link #lexBuffer()},
+     * but in chunks on the common {@link ForkJoinPool}.
+     */
+    public TokenBuffer lexParallel() {
+        return lexParallel(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Lexes the input into a {@link TokenBuffer} in chunks of roughly {@code
+     * chunkSize} characters, each lexed by its own task in {@code pool}. The
+     * result, including any {@link ParseException}, is the same as {@link
+     * #lexBuffer()}.
+     *
+     * Chunks are split at newlines outside of string and character literals,
+     * found by a quick scan of the quotes in the input. Since that scan can be
+     * fooled by invalid input, the chunks are checked as they are joined: a
+     * chunk is only used if the previous one did not end with a token crossing
+     * its start, and is otherwise lexed again from the end of that token.
+     * Chunks lex the whole source from their start, so token indices need no
+     * adjusting. A pool without parallelism lexes serially.
+     */
+    public TokenBuffer lexParallel(ForkJoinPool pool, int chunkSize) {
+        String source = chars.source();
+        if (source == null) {
+            throw new UnsupportedOperationException("Lexing into a token buffer requires the whole input.");
+        }
+        if (pool.getParallelism() <= 1) {
+            return lexBuffer();
+        }
+        int[] boundaries = split(source, chars.index, chunkSize);
+        if (boundaries.length <= 2) {
+            return lexBuffer();
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            chunks.add(new Chunk(source, boundaries[i], boundaries[i + 1]));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(chunks);
+            }
+        });
+        int size = 0;
+        for (Chunk chunk : chunks) {
+            size += chunk.tokens.size();
+        }
+        TokenBuffer buffer = new TokenBuffer(source, size);
+        int end = chars.index; // the end of the last token, where lexing continues
+        for (Chunk chunk : chunks) {
+            if (end <= chunk.start) {
+                if (chunk.error != null) {
+                    throw chunk.error;
+                }
+                buffer.addAll(chunk.tokens, 0, chunk.tokens.size(), 0);
+                end = chunk.end;
+            } else {
+                chars.index = end;
+                end = lexUntil(buffer, chunk.limit);
             }
+        }
+        chars.index = source.length();
+        return buffer;
+    }
 
-            if(chars.has(0)){
-                tokens.add(lexToken());
+    /**
+     * Returns the indices splitting the input from {@code start} into chunks
+     * of at least {@code chunkSize} characters at newlines which are not in a
+     * string or character literal, including {@code start} and the end.
+     */
+    private static int[] split(String source, int start, int chunkSize) {
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(start);
+        char quote = 0;
+        int next = start + chunkSize;
+        for (int i = start; next < source.length() && i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote || (c == '\n' && quote == '"')) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '\n' && i >= next) {
+                boundaries.add(i);
+                next = i + chunkSize;
             }
         }
-        for (Token token: tokens){
-            System.out.println("token:" + token.toString());
+        boundaries.add(source.length());
+        return boundaries.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Lexes tokens starting before {@code limit} into the buffer, returning
+     * the end of the last token (or the current index if there are none).
+     */
+    private int lexUntil(TokenBuffer buffer, int limit) {
+        int end = chars.index;
+        while (skipWhitespace() && chars.index < limit) {
+            scanInto(buffer);
+            end = chars.index;
         }
+        return end;
+    }
 
-        return tokens;
+    /**
+     * The tokens starting between {@code start} and {@code limit}, lexed as if
+     * the previous token ended at {@code start}. An exception is kept rather
+     * than thrown, as it only matters if the chunk is used.
+     */
+    private static final class Chunk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String source;
+        private final int start;
+        private final int limit;
+        private TokenBuffer tokens;
+        private int end;
+        private RuntimeException error;
+
+        private Chunk(String source, int start, int limit) {
+            this.source = source;
+            this.start = start;
+            this.limit = limit;
+        }
+
+        @Override
+        protected void compute() {
+            tokens = new TokenBuffer(source);
+            Lexer lexer = new Lexer(source);
+            lexer.chars.index = start;
+            try {
+                end = lexer.lexUntil(tokens, limit);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+
+    }
+
+    /**
+     * Re-lexes the source of {@code previous} after replacing the {@code
+     * removed} characters at {@code offset} with {@code inserted}, returning a
+     * buffer over the edited source with the same tokens as lexing it again.
+     *
+     * Since the lexer carries no state between tokens and looks at most one
+     * character past a token, lexing restarts at the first token which could
+     * see the edit and stops once a token starts where an old token did past
+     * the edit. The old tokens from there on are copied with their indices
+     * shifted, so only the damaged region is lexed again.
+     *
+     * The exception is a sign before a digit, which {@link #lexNumber()}
+     * includes in the number depending on the character at twice its index.
+     * Those tokens are checked against the edited source (including ones
+     * before the edit) and lexed again if the decision changes.
+     */
+    public static TokenBuffer relex(TokenBuffer previous, int offset, int removed, String inserted) {
+        String old = previous.source();
+        if (old == null) {
+            throw new UnsupportedOperationException("Re-lexing requires a token buffer over the source.");
+        } else if (offset < 0 || removed < 0 || offset + removed > old.length()) {
+            throw new IndexOutOfBoundsException("Edit at " + offset + " removing " + removed + " out of bounds for length " + old.length());
+        }
+        String source = old.substring(0, offset) + inserted + old.substring(offset + removed);
+        int shift = inserted.length() - removed;
+        int size = previous.size();
+
+        // Find the first token whose end (the character it peeked at) reaches
+        // the edit, then any earlier sign whose decision changed.
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (previous.getIndex(middle) + previous.getLength(middle) < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int first = low;
+        for (int i = first - 1; i >= 0 && 2 * previous.getIndex(i) >= offset; i--) {
+            if (!isSignStable(source, previous, i, previous.getIndex(i))) {
+                first = i;
+            }
+        }
+
+        TokenBuffer buffer = new TokenBuffer(source, size);
+        buffer.addAll(previous, 0, first, 0);
+        Lexer lexer = new Lexer(source);
+        lexer.chars.index = first == 0 ? 0 : previous.getIndex(first - 1) + previous.getLength(first - 1);
+        int damaged = offset + inserted.length(); // tokens before this cannot be reused
+        int next = first;
+        while (lexer.skipWhitespace()) {
+            int start = lexer.chars.index;
+            if (start >= damaged) {
+                while (next < size && previous.getIndex(next) + shift < start) {
+                    next++;
+                }
+                if (next < size && previous.getIndex(next) + shift == start) {
+                    int end = next;
+                    while (end < size && isSignStable(source, previous, end, previous.getIndex(end) + shift)) {
+                        end++;
+                    }
+                    buffer.addAll(previous, next, end, shift);
+                    if (end == size) {
+                        return buffer;
+                    }
+                    next = end;
+                    lexer.chars.index = previous.getIndex(end) + shift;
+                    damaged = lexer.chars.index + 1;
+                    continue;
+                }
+            }
+            lexer.scanInto(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns true if the token at {@code i} in {@code previous}, now starting
+     * at {@code start} in {@code source}, would be lexed the same way with
+     * respect to a leading sign (see {@link #relex}).
+     */
+    private static boolean isSignStable(String source, TokenBuffer previous, int i, int start) {
+        char sign = source.charAt(start);
+        if ((sign != '-' && sign != '+') || start + 1 >= source.length()
+                || source.charAt(start + 1) >= CLASSES.length || (CLASSES[source.charAt(start + 1)] & DIGIT) == 0) {
+            return true;
+        }
+        if (2 * start >= source.length()) {
+            return false; // lexNumber() fails on these, so lex it again
+        }
+        boolean included = (source.charAt(2 * start) == '-') == (sign == '-');
+        return included == (previous.getType(i) != Token.Type.OPERATOR);
+    }
+
+    /**
+     * Scans the next token into the buffer, for input which is known to have a
+     * token after any whitespace.
+     */
+    private void scanInto(TokenBuffer buffer) {
+        Token.Type type = scanToken();
+        if ((type == Token.Type.INTEGER || type == Token.Type.DECIMAL) && exact) {
+            buffer.addNumber(type, chars.getStart(), chars.length, number, scale);
+        } else if (type == Token.Type.OPERATOR) {
+            buffer.addOperator(chars.getStart(), chars.length, operator);
+        } else {
+            int symbol = type == Token.Type.IDENTIFIER ? chars.symbol(chars.getStart(), chars.index) : Symbols.NONE;
+            buffer.add(type, chars.getStart(), chars.length, symbol);
+        }
+        chars.skip();
+    }
+
+    /**
+     * Returns an iterator which lexes the input lazily, one token per call to
+     * {@link Iterator#next()}. A {@link ParseException} is thrown by the call
+     * which reaches the invalid token, after all tokens before it have been
+     * returned.
+     */
+    public Iterator<Token> tokens() {
+        return new Iterator<>() {
+
+            private Token next = null;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = lexNext();
+                }
+                return next != null;
+            }
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Token token = next;
+                next = null;
+                return token;
+            }
+
+        };
+    }
+
+    /**
+     * Skips whitespace and lexes the next token, returning {@code null} once
+     * the input is exhausted.
+     */
+    private Token lexNext() {
+        return skipWhitespace() ? lexToken() : null;
+    }
+
+    /**
+     * Skips whitespace, returning true if there is a token after it.
+     */
+    private boolean skipWhitespace() {
+        if (chars.advanceRun(CharScanner.WHITESPACE) > 0) {
+            chars.length = 0; //Ensures that the whitespace or escape character are not included in the token
+        }
+        return chars.has(0);
     }
 
     /**
@@ -57,179 +477,256 @@ public final class Lexer {
      * by {@link #lex()}
      */
     public Token lexToken() {
-        if (peek("!=") || peek("==")) {
-            return lexOperator(); // Handle this in lexOperator()
-        }  else if (peek("[A-Za-z_]")) {
-            return lexIdentifier();
-        } else if (peek("[0-9]") || peek("[-\\+]", "[0-9]")) { // Include negative sign for numbers
-            return lexNumber();
-        } else if (peek("-")) { // Check if it's a hyphen for operator
-            return lexOperator(); // Treat hyphen as an operator
-        } else if (peek("'")) {
-            return lexCharacter();
-        } else if (peek("\"")) {
-            return lexString();
-        } else if (peek("[|,:;!@#$%^&*()=<>+/-\\\\.]")) {
-            return lexOperator(); // Handle single-character operators
+        return emit(scanToken());
+    }
+
+    public Token lexIdentifier() {
+        return emit(scanIdentifier());
+    }
+
+    public Token lexNumber() throws ParseException {
+        return emit(scanNumber());
+    }
+
+    public Token lexCharacter() {
+        return emit(scanCharacter());
+    }
+
+    public Token lexString() {
+        return emit(scanString());
+    }
+
+    public Token lexOperator() {
+        return emit(scanOperator());
+    }
+
+    /**
+     * Emits the token just scanned, attaching the value of a number or the
+     * binary operator of an operator.
+     */
+    private Token emit(Token.Type type) {
+        if (type == Token.Type.OPERATOR) {
+            int start = chars.getStart();
+            CharSequence literal = chars.literal(start, chars.index);
+            chars.skip();
+            return new Token(type, literal, start, Symbols.NONE, null, operator);
+        } else if ((type != Token.Type.INTEGER && type != Token.Type.DECIMAL) || !exact) {
+            return chars.emit(type);
+        }
+        int start = chars.getStart();
+        CharSequence literal = chars.literal(start, chars.index);
+        chars.skip();
+        Number value = type == Token.Type.INTEGER ? BigInteger.valueOf(number) : BigDecimal.valueOf(number, scale);
+        return new Token(type, literal, start, Symbols.NONE, value);
+    }
+
+    /**
+     * Scans the next token, returning its type. The token spans from {@link
+     * CharStream#getStart()} to the current index and is not yet emitted,
+     * which lets {@link #lexBuffer()} record it without creating a {@link
+     * Token}. The remaining scan methods work the same way.
+     */
+    private Token.Type scanToken() {
+        if (peek(IDENTIFIER_START)) {
+            return scanIdentifier();
+        } else if (peek(DIGIT) || peek(SIGN, DIGIT)) { // Include negative sign for numbers
+            return scanNumber();
+        } else if (peek('-')) { // Check if it's a hyphen for operator
+            return scanOperator(); // Treat hyphen as an operator
+        } else if (peek('\'')) {
+            return scanCharacter();
+        } else if (peek('"')) {
+            return scanString();
+        } else if (peek(OPERATOR_START)) {
+            return scanOperator(); // Handle single-character operators
         } else {
             throw new ParseException("Unknown token", chars.index);
         }
     }
 
-    public Token lexIdentifier() {
+    private Token.Type scanIdentifier() {
         // Ensure the identifier starts with a letter or underscore
-        if (!peek("[A-Za-z_]")) {
+        if (!peek(IDENTIFIER_START)) {
             throw new ParseException("Invalid identifier start", chars.index);
         }
 
         // Match valid identifier characters, including letters, digits, underscores
-        while (match("[A-Za-z0-9_-]")) {
-            // Keep matching valid identifier characters
-        }
+        chars.advanceRun(CharScanner.IDENTIFIER);
 
-        return chars.emit(Token.Type.IDENTIFIER);
+        return Token.Type.IDENTIFIER;
     }
 
 
-    public Token lexNumber() throws ParseException {
-        StringBuilder number = new StringBuilder();
+    private Token.Type scanNumber() throws ParseException {
+        // The digits (and '-', but not '+') checked against the range limits
+        // are the characters between numberStart and the current index.
+        int numberStart = chars.index;
         boolean hasDigits = false;
+        boolean negative = false;
+        number = 0;
+        scale = 0;
+        exact = true;
 
         // Handle the optional '+' or '-' sign
-        if (peek("[-\\+]")) {
+        if (peek(SIGN)) {
             if (chars.get(chars.index) == '-') {
-                match("-");
-                number.append('-'); // Append the negative sign
-            } else if (peek("\\+")) {
-                match("\\+");
+                negative = match('-');
+            } else if (peek('+')) {
+                match('+');
+                numberStart++;
             }
         }
 
         // Check for leading zeros
-        if (peek("0")) {
-            number.append('0');
+        if (peek('0')) {
             chars.advance();
 
             // No other digits allowed after a leading zero
-            if (peek("\\d")) {
+            if (peek(DIGIT)) {
                 throw new ParseException("Invalid leading zero in number", chars.index);
             }
         } else {
             // Capture digits for numbers without leading zero
-            while (peek("\\d")) {
+            while (matchDigit()) {
                 hasDigits = true;  // At least one digit is present
-                number.append(chars.get(0));
-                chars.advance();
             }
 
-            // If no digits were found, throw an error
+            // If no digits were found, fall back to lexing an operator
             if (!hasDigits) {
-                return lexOperator();
-               // throw new ParseException("No digits found in number", chars.index);
+                return scanOperator();
             }
         }
 
         // Check if a decimal point follows
-        if (peek("\\.")) {
-            number.append('.'); // Include the decimal point
-            chars.advance(); // Consume the decimal point
-
+        if (match('.')) {
             // Ensure there are digits following the decimal point
-            if (!peek("\\d")) {
+            if (!peek(DIGIT)) {
                 throw new ParseException("Invalid decimal number", chars.index);
             }
 
             // Capture digits after the decimal point
-            while (peek("\\d")) {
-                number.append(chars.get(0));
-                chars.advance();
+            while (matchDigit()) {
+                scale++;
             }
 
             // Check if the number exceeds the integer precision of 9007199254740993
-            if (number.length() > 16 ||
-                    (number.length() == 16 && number.toString().compareTo("9007199254740993") > 0)) {
+            if (exceeds(numberStart, "9007199254740993")) {
                 throw new ParseException("Number exceeds maximum integer precision: 9007199254740993", chars.index);
             }
 
             // Check for -0.0 case
-            if (number.toString().equals("-0.0")) {
+            if (chars.index - numberStart == 4 && chars.get(-4) == '-' && chars.get(-3) == '0'
+                    && chars.get(-2) == '.' && chars.get(-1) == '0') {
                 throw new ParseException("Invalid number: -0.0 is not allowed", chars.index);
             }
 
             // Emit a DECIMAL token
-            return chars.emit(Token.Type.DECIMAL);
+            number = negative ? -number : number;
+            return Token.Type.DECIMAL;
         }
 
         // Check if the number exceeds Integer.MAX_VALUE
-        String numberStr = number.toString();
-        if (numberStr.length() > 10 || // Integer.MAX_VALUE has 10 digits
-                (numberStr.length() == 10 && numberStr.compareTo(String.valueOf(Integer.MAX_VALUE)) > 0)) {
+        if (exceeds(numberStart, "2147483647")) {
             throw new ParseException("Number exceeds maximum integer value", chars.index);
         }
 
         // Emit an INTEGER token if no decimal point was found
-        return chars.emit(Token.Type.INTEGER);
+        number = negative ? -number : number;
+        return Token.Type.INTEGER;
     }
 
+    /**
+     * Matches a digit, adding it to {@link #number} while the value still fits
+     * in a long.
+     */
+    private boolean matchDigit() {
+        if (!match(DIGIT)) {
+            return false;
+        } else if (number > (Long.MAX_VALUE - 9) / 10) {
+            exact = false;
+        } else {
+            number = number * 10 + (chars.get(-1) - '0');
+        }
+        return true;
+    }
 
+    /**
+     * Returns true if the characters from {@code start} to the current index
+     * are longer than {@code limit}, or are as long and compare greater
+     * lexicographically.
+     */
+    private boolean exceeds(int start, String limit) {
+        int length = chars.index - start;
+        if (length != limit.length()) {
+            return length > limit.length();
+        }
+        for (int i = 0; i < length; i++) {
+            char c = chars.get(i - length);
+            if (c != limit.charAt(i)) {
+                return c > limit.charAt(i);
+            }
+        }
+        return false;
+    }
 
-
-    public Token lexCharacter() {
+    private Token.Type scanCharacter() {
         // Ensure the character starts with a single quote
-        if (!match("'")) {
+        if (!match('\'')) {
             throw new ParseException("Character literal must start with a single quote", chars.index);
         }
 
         // Check if the next character is a valid single character or an escape sequence
-        if (peek("^[^'\\\\]$") || peek("^\\s$")) {  // Match any character except ' or \
+        if (chars.has(0) && chars.get(0) != '\'' && chars.get(0) != '\\') {  // Match any character except ' or \
             chars.advance();  // Consume the character
-        } else if (peek("\\\\")) {  // If it's a backslash, handle the escape sequence
+        } else if (peek('\\')) {  // If it's a backslash, handle the escape sequence
             lexEscape();  // lexEscape() handles the escape sequence and throws an error if invalid
         } else {
             throw new ParseException("Invalid character literal", chars.index);
         }
 
-        while(peek("[ \b\n\r\t]")){
-            chars.advance(); // skip over white space
+        while(match(WHITESPACE)){
+            // skip over white space
         }
 
         // Ensure the character is terminated by a single quote
-        if (!match("'")) {
+        if (!match('\'')) {
             throw new ParseException("Character literal must end with a single quote", chars.index);
         }
 
         // Emit the character token
-        return chars.emit(Token.Type.CHARACTER);
+        return Token.Type.CHARACTER;
     }
 
-    public Token lexString() {
-        if (!match("\"")) {
+    private Token.Type scanString() {
+        if (!match('"')) {
             throw new ParseException("String literal must start with a double quote", chars.index);
         }
 
-        while (peek("[^\"\\\\]") || peek("\\\\")) {  // Match regular characters or escape sequences
-            if (peek("\\\\")) {
+        chars.advanceRun(CharScanner.STRING); // Match regular characters up to the next '"', '\\', or newline
+        while (chars.has(0) && chars.get(0) != '"') {  // Match regular characters or escape sequences
+            if (peek('\\')) {
                 lexEscape();  // Handle escape sequence
-            } else if (match("[\\n]")) {
+            } else if (match('\n')) {
                throw new ParseException("Unterminated newline in string!", chars.index);
             } else {
                 chars.advance();
             }
+            chars.advanceRun(CharScanner.STRING);
         }
 
-        if (!match("\"")) {
+        if (!match('"')) {
             throw new ParseException("String literal must end with a double quote", chars.index);
         }
         else {
-            match("\"");
+            match('"');
         }
 
-        return chars.emit(Token.Type.STRING);
+        return Token.Type.STRING;
     }
 
     public void lexEscape() {
-        if (match("\\\\")) {  // Escape sequence starts with backslash
-            if (!match("[bnrt'\"\\\\]")) {  // Valid escape characters
+        if (match('\\')) {  // Escape sequence starts with backslash
+            if (!match(ESCAPE)) {  // Valid escape characters
                 throw new ParseException("Invalid escape sequence", chars.index);
             }
         } else {
@@ -238,80 +735,109 @@ public final class Lexer {
     }
 
 
-    public Token lexOperator() {
+    private Token.Type scanOperator() {
+        operator = null;
         // Check for multi-character operators first
 
-        if (match("-")) {
-            return chars.emit(Token.Type.OPERATOR); // Emit the hyphen as an operator
+        if (match('-')) {
+            operator = Token.Operator.SUBTRACT;
+            return Token.Type.OPERATOR; // Emit the hyphen as an operator
         }
 
-        // Not equals (!=)
-        if (peek("!")) {
-            chars.advance(); // Consume '!'
-            if (peek("=")) {
-                chars.advance(); // Consume '='
-                return chars.emit(Token.Type.OPERATOR); // '!='
+        // Not equals (!=), equals (==), less than or equals (<=), greater than or equals (>=)
+        if (match('!') || match('=') || match('<') || match('>')) {
+            char first = chars.get(-1);
+            boolean equals = match('='); // Consume an optional trailing '='
+            switch (first) {
+                case '!':
+                    operator = equals ? Token.Operator.NOT_EQUAL : null;
+                    break;
+                case '=':
+                    operator = equals ? Token.Operator.EQUAL : null;
+                    break;
+                case '<':
+                    operator = equals ? Token.Operator.LESS_EQUAL : Token.Operator.LESS;
+                    break;
+                default:
+                    operator = equals ? Token.Operator.GREATER_EQUAL : Token.Operator.GREATER;
             }
-            return chars.emit(Token.Type.OPERATOR); // Just '!'
+            return Token.Type.OPERATOR;
         }
 
-        // Equals (==)
-        if (peek("=")) {
-            chars.advance(); // Consume '='
-            if (peek("=")) {
-                chars.advance(); // Consume '='
-                return chars.emit(Token.Type.OPERATOR); // '=='
+        // Logical AND (&&)
+        if (match('&')) {
+            if (match('&')) {
+                operator = Token.Operator.AND;
+                return Token.Type.OPERATOR; // '&&'
             }
-            return chars.emit(Token.Type.OPERATOR); // Just '='
         }
 
-        // Less than or equals (<=)
-        if (peek("<")) {
-            chars.advance(); // Consume '<'
-            if (peek("=")) {
-                chars.advance(); // Consume '='
-                return chars.emit(Token.Type.OPERATOR); // '<='
+        // Logical OR (||)
+        if (match('|')) {
+            if (match('|')) {
+                operator = Token.Operator.OR;
+                return Token.Type.OPERATOR; // '||'
             }
-            return chars.emit(Token.Type.OPERATOR); // Just '<'
         }
 
-        // Greater than or equals (>=)
-        if (peek(">")) {
-            chars.advance(); // Consume '>'
-            if (peek("=")) {
-                chars.advance(); // Consume '='
-                return chars.emit(Token.Type.OPERATOR); // '>='
+        // Now check for single-character operators
+        if (match(OPERATOR)) {
+            if (chars.length == 1) { // not after a lone '&' or '|'
+                char c = chars.get(-1);
+                operator = c == '+' ? Token.Operator.ADD : c == '*' ? Token.Operator.MULTIPLY : c == '/' ? Token.Operator.DIVIDE : null;
             }
-            return chars.emit(Token.Type.OPERATOR); // Just '>'
+            return Token.Type.OPERATOR;
         }
 
-        // Logical AND (&&)
-        if (peek("&")) {
-            chars.advance(); // Consume '&'
-            if (peek("&")) {
-                chars.advance(); // Consume '&'
-                return chars.emit(Token.Type.OPERATOR); // '&&'
-            }
-        }
+        throw new ParseException("Invalid operator", chars.index);
+    }
 
-        // Logical OR (||)
-        if (peek("\\|")) {
-            chars.advance(); // Consume '|'
-            if (peek("\\|")) {
-                chars.advance(); // Consume '|'
-                return chars.emit(Token.Type.OPERATOR); // '||'
-            }
+    /**
+     * Returns true if the next character belongs to the given character class
+     * (one of the class constants, such as {@link #DIGIT}).
+     */
+    private boolean peek(int charClass) {
+        if (!chars.has(0)) {
+            return false;
         }
+        char c = chars.get(0);
+        return c < CLASSES.length && (CLASSES[c] & charClass) != 0;
+    }
 
-        // Now check for single-character operators, including Unicode
-        // WORK ON UNICODE
-        if (match("[.,:;!@#$%^&*()+=/<>\\-]")) {  // Added '<' and '>', and ensure unicode is properly checked
-            return chars.emit(Token.Type.OPERATOR);
+    /**
+     * Returns true if the next two characters belong to the given character
+     * classes respectively.
+     */
+    private boolean peek(int first, int second) {
+        if (!peek(first) || !chars.has(1)) {
+            return false;
         }
+        char c = chars.get(1);
+        return c < CLASSES.length && (CLASSES[c] & second) != 0;
+    }
 
-        throw new ParseException("Invalid operator", chars.index);
+    /**
+     * Returns true if the next character is exactly {@code c}.
+     */
+    private boolean peek(char c) {
+        return chars.has(0) && chars.get(0) == c;
+    }
+
+    private boolean match(int charClass) {
+        boolean peek = peek(charClass);
+        if (peek) {
+            chars.advance();
+        }
+        return peek;
     }
 
+    private boolean match(char c) {
+        boolean peek = peek(c);
+        if (peek) {
+            chars.advance();
+        }
+        return peek;
+    }
 
     /**
      * Returns true if the next sequence of characters match the given patterns,
@@ -350,9 +876,16 @@ public final class Lexer {
      * The only field you need to access is {@link #index} for any {@link
      * ParseException} which is thrown.
      */
-    public static final class CharStream {
+    public static class CharStream {
+
+        private static final int WINDOW_SIZE = 4096;
 
         private final String input;
+        // The characters of the input from windowStart to windowEnd, copied
+        // for a vectorized CharScanner (see advanceRun()).
+        private char[] window;
+        private int windowStart = 0;
+        private int windowEnd = 0;
         private int index = 0;
         private int length = 0;
 
@@ -360,6 +893,21 @@ public final class Lexer {
             this.input = input;
         }
 
+        /**
+         * Returns the absolute index of the next character.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the absolute index of the first character of the token
+         * currently being matched.
+         */
+        public int getStart() {
+            return index - length;
+        }
+
         public boolean has(int offset) {
             return index + offset < input.length();
         }
@@ -379,12 +927,287 @@ public final class Lexer {
             length = 0;
         }
 
+        /**
+         * Advances past the run of characters of the given {@link
+         * CharScanner} kind at the current index, returning the number of
+         * characters advanced.
+         *
+         * A vectorized scanner works on a window of the input which is copied
+         * as it is reached, so a stream which only lexes part of the input,
+         * such as a chunk of {@link Lexer#lexParallel()} or a {@link Lexer#relex}, only
+         * copies that part.
+         */
+        protected int advanceRun(int kind) {
+            int end = index;
+            if (CharScanner.INSTANCE.isVectorized()) {
+                while (end < input.length()) {
+                    if (end < windowStart || end >= windowEnd) {
+                        fill(end);
+                    }
+                    end = windowStart + CharScanner.INSTANCE.skip(kind, window, end - windowStart, windowEnd - windowStart);
+                    if (end < windowEnd) {
+                        break;
+                    }
+                }
+            } else {
+                while (end < input.length() && CharScanner.matches(kind, input.charAt(end))) {
+                    end++;
+                }
+            }
+            return advance(end - index);
+        }
+
+        /**
+         * Copies the window of the input starting at the absolute index
+         * {@code start}.
+         */
+        private void fill(int start) {
+            if (window == null) {
+                window = new char[WINDOW_SIZE];
+            }
+            windowStart = start;
+            windowEnd = Math.min(input.length(), start + window.length);
+            input.getChars(windowStart, windowEnd, window, 0);
+        }
+
+        /**
+         * Advances by {@code count} characters, returning the count.
+         */
+        private int advance(int count) {
+            index += count;
+            length += count;
+            return count;
+        }
+
         public Token emit(Token.Type type) {
             int start = index - length;
             skip();
 //            Token token = new Token(type, input.substring(start, index), start);
 //            System.out.println("this is was emitted: " + token.toString() + ", " + token.getType());
-            return new Token(type, input.substring(start, index), start);
+            if (type == Token.Type.IDENTIFIER) {
+                int symbol = symbol(start, index);
+                return new Token(type, Symbols.getName(symbol), start, symbol, null);
+            }
+            CharSequence literal = literal(start, index);
+            return new Token(type, literal, start, Symbols.NONE, Token.parseValue(type, literal));
+        }
+
+        /**
+         * Interns the characters between the absolute indices {@code start}
+         * and {@code end} in {@link Symbols}, with the same bounds as {@link
+         * #literal(int, int)}.
+         */
+        protected int symbol(int start, int end) {
+            return Symbols.intern(input, start, end);
+        }
+
+        /**
+         * Returns the whole input, or {@code null} if it is not held in memory.
+         */
+        protected String source() {
+            return input;
+        }
+
+        /**
+         * Returns the characters between the absolute indices {@code start}
+         * and {@code end}, which are never before {@link #getStart()}. This is
+         * a {@link SourceView} of the input rather than a copy.
+         */
+        protected CharSequence literal(int start, int end) {
+            return new SourceView(input, start, end - start);
+        }
+
+    }
+
+    /**
+     * A {@link CharStream} reading its input in chunks into a bounded buffer.
+     * Characters before the token currently being matched are discarded when
+     * the buffer is refilled, so the buffer only grows past its initial size
+     * to hold a token (or lookahead) longer than it.
+     *
+     * Note that {@link Lexer#lexNumber()} looks at the character at twice the
+     * current index when deciding whether a sign belongs to the number, which
+     * requires reading that far ahead. Since the characters from the current
+     * token up to there must all be in the buffer, a sign at index {@code n}
+     * grows it to about {@code n} characters, which it keeps. Memory is then
+     * bounded by the position of the last signed number in the input rather
+     * than the buffer size, up to about the size of the whole input.
+     */
+    public static abstract class BufferedCharStream extends CharStream {
+
+        public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+        private char[] buffer;
+        private CharBuffer view; // wraps the buffer for interning symbols
+        private int offset = 0; // absolute index of buffer[0]
+        private int limit = 0; // number of characters in the buffer
+        private boolean eof = false;
+
+        protected BufferedCharStream(int bufferSize) {
+            super(null);
+            if (bufferSize <= 0) {
+                throw new IllegalArgumentException("Buffer size must be positive.");
+            }
+            this.buffer = new char[bufferSize];
+            this.view = CharBuffer.wrap(buffer);
+        }
+
+        /**
+         * Reads up to {@code length} characters into {@code buffer} from
+         * {@code start}, returning the number read or -1 at the end of the
+         * input. The length is always at least two, and at least one
+         * character must be read if there is any left.
+         */
+        protected abstract int read(char[] buffer, int start, int length);
+
+        @Override
+        public boolean has(int offset) {
+            return fill(getIndex() + offset);
+        }
+
+        @Override
+        public char get(int offset) {
+            int position = getIndex() + offset;
+            if (!fill(position)) {
+                throw new StringIndexOutOfBoundsException(position);
+            }
+            return buffer[position - this.offset];
+        }
+
+        @Override
+        protected int advanceRun(int kind) {
+            int count = 0;
+            while (fill(getIndex())) {
+                int start = getIndex() - offset;
+                int end = CharScanner.INSTANCE.skip(kind, buffer, start, limit);
+                count += super.advance(end - start);
+                if (end < limit) {
+                    break;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Copies the characters, since the buffer is reused.
+         */
+        @Override
+        protected CharSequence literal(int start, int end) {
+            return new String(buffer, start - offset, end - start);
+        }
+
+        @Override
+        protected int symbol(int start, int end) {
+            return Symbols.intern(view, start - offset, end - offset);
+        }
+
+        /**
+         * Reads until the character at the absolute index {@code position} is
+         * in the buffer, returning false if the input ends before it.
+         */
+        private boolean fill(int position) {
+            while (position >= offset + limit && !eof) {
+                // Keep room for at least a surrogate pair.
+                if (buffer.length - limit < 2) {
+                    int discard = getStart() - offset;
+                    if (discard > 0) {
+                        System.arraycopy(buffer, discard, buffer, 0, limit - discard);
+                        offset += discard;
+                        limit -= discard;
+                    } else {
+                        char[] grown = new char[Math.max(buffer.length * 2, 2)];
+                        System.arraycopy(buffer, 0, grown, 0, limit);
+                        buffer = grown;
+                        view = CharBuffer.wrap(buffer);
+                    }
+                    continue;
+                }
+                int read = read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    limit += read;
+                }
+            }
+            return position < offset + limit;
+        }
+
+    }
+
+    /**
+     * A {@link BufferedCharStream} reading from a {@link Reader}. The buffer
+     * size is only the initial size, since a signed number makes the buffer
+     * hold everything up to twice its index.
+     */
+    public static final class ReaderCharStream extends BufferedCharStream {
+
+        private final Reader reader;
+
+        public ReaderCharStream(Reader reader, int bufferSize) {
+            super(bufferSize);
+            this.reader = reader;
+        }
+
+        @Override
+        protected int read(char[] buffer, int start, int length) {
+            try {
+                return reader.read(buffer, start, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+    }
+
+    /**
+     * A {@link BufferedCharStream} decoding UTF-8 from a memory mapped file as
+     * the lexer advances, without first reading the file into a {@link
+     * String}. Malformed input is replaced as by {@code new String(bytes,
+     * UTF_8)}, so indices are the same as when lexing the decoded string.
+     */
+    public static final class MappedCharStream extends BufferedCharStream {
+
+        private final ByteBuffer bytes;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private boolean flushed = false;
+
+        public MappedCharStream(Path path) throws IOException {
+            this(map(path), DEFAULT_BUFFER_SIZE);
+        }
+
+        /**
+         * Decodes the remaining bytes of the given buffer, which is typically
+         * a {@link MappedByteBuffer}.
+         */
+        public MappedCharStream(ByteBuffer bytes, int bufferSize) {
+            super(bufferSize);
+            this.bytes = bytes;
+        }
+
+        private static MappedByteBuffer map(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("File is too large to map: " + path);
+                }
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+
+        @Override
+        protected int read(char[] buffer, int start, int length) {
+            if (flushed) {
+                return -1;
+            }
+            CharBuffer chars = CharBuffer.wrap(buffer, start, length);
+            CoderResult result = decoder.decode(bytes, chars, true);
+            if (!result.isOverflow()) {
+                result = decoder.flush(chars);
+                flushed = !result.isOverflow();
+            }
+            int read = chars.position() - start;
+            return read == 0 && flushed ? -1 : read;
         }
 
     }
@@ -2,9 +2,14 @@ package plc.project;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 /**
  * The parser takes the sequence of tokens emitted by the lexer and turns that
  * into a structured representation of the program, called the Abstract Syntax
@@ -20,16 +25,139 @@ import java.util.Optional;
  */
 public final class Parser {
 
+    private static final int LOGICAL = 0;
+    private static final int EQUALITY = 1;
+    private static final int ADDITIVE = 2;
+    private static final int MULTIPLICATIVE = 3;
+
+    /**
+     * The precedence of each binary operator, indexed by its ordinal.
+     */
+    private static final int[] PRECEDENCE = new int[Token.Operator.values().length];
+
+    static {
+        for (Token.Operator operator : Token.Operator.values()) {
+            switch (operator) {
+                case AND:
+                case OR:
+                    PRECEDENCE[operator.ordinal()] = LOGICAL;
+                    break;
+                case ADD:
+                case SUBTRACT:
+                    PRECEDENCE[operator.ordinal()] = ADDITIVE;
+                    break;
+                case MULTIPLY:
+                case DIVIDE:
+                    PRECEDENCE[operator.ordinal()] = MULTIPLICATIVE;
+                    break;
+                default:
+                    PRECEDENCE[operator.ordinal()] = EQUALITY;
+            }
+        }
+    }
+
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 14;
+
     private final TokenStream tokens;
+    private final Map<Ast, int[]> ranges;
+    private boolean lazy = false;
+    private Ast.Expression[] operands = new Ast.Expression[16]; // the stacks of parseBinaryExpression
+    private Token.Operator[] operators = new Token.Operator[16];
+    private int operandCount = 0;
+    private int operatorCount = 0;
 
     public Parser(List<Token> tokens) {
+        this(TokenBuffer.of(tokens));
+    }
+
+    /**
+     * Creates a parser reading directly from a {@link TokenBuffer}, such as
+     * one from {@link Lexer#lexBuffer()}, so literals are only created for the
+     * tokens which become part of the AST.
+     */
+    public Parser(TokenBuffer tokens) {
+        this(tokens, null);
+    }
+
+    /**
+     * Creates a parser which pulls tokens from {@code tokens} as it needs
+     * them, such as from {@link Lexer#tokens()}, so lexing and parsing run
+     * together. Only a few tokens around the current one are kept, so the
+     * memory used for tokens does not grow with the input. A {@link
+     * ParseException} from the lexer is thrown when the parser reaches the
+     * invalid token, rather than before parsing starts.
+     *
+     * Since earlier tokens are not kept, methods are always parsed serially
+     * and eagerly, even by {@link #parseSourceParallel()} and {@link
+     * #parseSourceLazy()}.
+     */
+    public Parser(Iterator<Token> tokens) {
         this.tokens = new TokenStream(tokens);
+        this.ranges = null;
+    }
+
+    /**
+     * Creates a parser which records the token range of each field, method,
+     * and statement it parses into {@code ranges}, for an {@link
+     * IncrementalParser}.
+     */
+    Parser(TokenBuffer tokens, Map<Ast, int[]> ranges) {
+        this.tokens = new TokenStream(tokens);
+        this.ranges = ranges;
     }
 
     /**
      * Parses the {@code source} rule.
      */
     public Ast.Source parseSource() throws ParseException {
+        return parseSource(null, 0);
+    }
+
+    /**
+     * Parses the {@code source} rule like {@link #parseSource()}, but only
+     * parses the signature of each method. The statements of a method are
+     * parsed the first time {@link Ast.Method#getStatements()} is called, so
+     * a {@link ParseException} in them is only thrown then.
+     *
+     * The end of each body is found by matching blocks with their {@code
+     * END}. A body which cannot be matched, such as one missing its {@code
+     * END}, is parsed immediately instead.
+     */
+    public Ast.Source parseSourceLazy() throws ParseException {
+        lazy = true;
+        try {
+            return parseSource();
+        } finally {
+            lazy = false;
+        }
+    }
+
+    /**
+     * Parses the {@code source} rule like {@link #parseSource()}, but with
+     * the methods parsed in chunks on the common {@link ForkJoinPool}.
+     */
+    public Ast.Source parseSourceParallel() throws ParseException {
+        return parseSourceParallel(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Parses the {@code source} rule with the methods in chunks of roughly
+     * {@code chunkSize} tokens, each parsed by its own task in {@code pool}.
+     * The result, including any {@link ParseException}, is the same as {@link
+     * #parseSource()}.
+     *
+     * Chunks are split before top-level {@code DEF}s, found by a quick scan
+     * matching {@code DEF}, {@code IF}, {@code FOR}, and {@code WHILE} with
+     * their {@code END}. Since that scan can be fooled by invalid input, the
+     * chunks are checked as they are joined: a chunk is only used if the
+     * previous one ended at its start, and is otherwise parsed again from the
+     * end of the previous one. A pool without parallelism parses serially.
+     */
+    public Ast.Source parseSourceParallel(ForkJoinPool pool, int chunkSize) throws ParseException {
+        return parseSource(pool.getParallelism() <= 1 ? null : pool, chunkSize);
+    }
+
+    private Ast.Source parseSource(ForkJoinPool pool, int chunkSize) throws ParseException {
         List<Ast.Field> fields = new ArrayList<>();
         List<Ast.Method> methods = new ArrayList<>();
 
@@ -37,22 +165,21 @@ public final class Parser {
             while (peek(Token.Type.IDENTIFIER)) {
 
                 // might be a field
-                if (peek("LET")) {
-                    while (peek("LET")) {
-                        fields.add(parseField());
-                        if (tokens.has(0) && (!peek("LET") && !peek("DEF"))) {
+                if (peek(Symbols.LET)) {
+                    while (peek(Symbols.LET)) {
+                        int start = tokens.index;
+                        fields.add(record(parseField(), start));
+                        if (tokens.has(0) && (!peek(Symbols.LET) && !peek(Symbols.DEF))) {
                             throw new ParseException("not let or def",
                                     tokens.index);
                         }
                     }
                 }
-                if (peek("DEF")) {
-                    while (peek("DEF")) {
-                        methods.add(parseMethod());
-                        if (tokens.has(0) && !peek("DEF")) {
-                            throw new ParseException("not def",
-                                    tokens.index);
-                        }
+                if (peek(Symbols.DEF)) {
+                    if (pool != null && tokens.tokens != null) {
+                        parseMethods(methods, pool, chunkSize);
+                    } else {
+                        parseMethodsUntil(methods, Integer.MAX_VALUE);
                     }
                 }
             }
@@ -65,23 +192,176 @@ public final class Parser {
         }
     }
 
+    /**
+     * Parses methods starting before {@code limit} into the list. As in the
+     * {@code source} rule, the methods must be followed by another method or
+     * the end of the input.
+     */
+    private void parseMethodsUntil(List<Ast.Method> methods, int limit) throws ParseException {
+        while (tokens.index < limit && peek(Symbols.DEF)) {
+            int start = tokens.index;
+            methods.add(record(parseMethod(), start));
+            if (tokens.has(0) && !peek(Symbols.DEF)) {
+                throw new ParseException("not def",
+                        tokens.index);
+            }
+        }
+    }
+
+    /**
+     * Parses the methods through the end of the input in parallel chunks, as
+     * described by {@link #parseSourceParallel(ForkJoinPool, int)}.
+     */
+    private void parseMethods(List<Ast.Method> methods, ForkJoinPool pool, int chunkSize) throws ParseException {
+        int[] boundaries = split(tokens.tokens, tokens.index, chunkSize);
+        if (boundaries.length <= 2) {
+            parseMethodsUntil(methods, tokens.tokens.size());
+            return;
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            chunks.add(new Chunk(tokens.tokens, boundaries[i], boundaries[i + 1]));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(chunks);
+            }
+        });
+        for (Chunk chunk : chunks) {
+            if (tokens.index == chunk.start) {
+                if (chunk.error != null) {
+                    throw chunk.error;
+                }
+                methods.addAll(chunk.methods);
+                tokens.index = chunk.end;
+            } else {
+                parseMethodsUntil(methods, chunk.limit);
+            }
+        }
+    }
+
+    /**
+     * Returns the token indices splitting the methods from {@code start} into
+     * chunks of at least {@code chunkSize} tokens before top-level {@code
+     * DEF}s, including {@code start} and the end.
+     */
+    private static int[] split(TokenBuffer tokens, int start, int chunkSize) {
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(start);
+        int depth = 0;
+        int next = start + chunkSize;
+        for (int i = start; next < tokens.size() && i < tokens.size(); i++) {
+            switch (tokens.getSymbol(i)) {
+                case Symbols.DEF:
+                    if (depth == 0 && i >= next) {
+                        boundaries.add(i);
+                        next = i + chunkSize;
+                    }
+                    depth++;
+                    break;
+                case Symbols.IF:
+                case Symbols.FOR:
+                case Symbols.WHILE:
+                    depth++;
+                    break;
+                case Symbols.END:
+                    depth = Math.max(depth - 1, 0);
+                    break;
+            }
+        }
+        boundaries.add(tokens.size());
+        return boundaries.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * The methods starting between {@code start} and {@code limit}, parsed as
+     * if the previous method ended at {@code start}. An exception is kept
+     * rather than thrown, as it only matters if the chunk is used.
+     */
+    private static final class Chunk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TokenBuffer tokens;
+        private final int start;
+        private final int limit;
+        private final List<Ast.Method> methods = new ArrayList<>();
+        private int end;
+        private RuntimeException error;
+
+        private Chunk(TokenBuffer tokens, int start, int limit) {
+            this.tokens = tokens;
+            this.start = start;
+            this.limit = limit;
+        }
+
+        @Override
+        protected void compute() {
+            Parser parser = new Parser(tokens);
+            parser.tokens.index = start;
+            try {
+                parser.parseMethodsUntil(methods, limit);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            end = parser.tokens.index;
+        }
+
+    }
+
+    /**
+     * Records the token range of a field, method, or statement which started
+     * at {@code start} and ended at the current token, if there is a map of
+     * ranges as for an {@link IncrementalParser}.
+     */
+    private <T extends Ast> T record(T ast, int start) {
+        if (ranges != null) {
+            ranges.put(ast, new int[] {start, tokens.index});
+        }
+        return ast;
+    }
+
+    /**
+     * Parses the field, method, or statement starting at {@code start} as the
+     * same rule {@code previous} was parsed with, for an {@link
+     * IncrementalParser}. The range of the result is recorded, and {@link
+     * #index()} is where it ended.
+     */
+    Ast reparse(Ast previous, int start) throws ParseException {
+        tokens.index = start;
+        if (previous instanceof Ast.Field) {
+            return record(parseField(), start);
+        } else if (previous instanceof Ast.Method) {
+            return record(parseMethod(), start);
+        }
+        return parseStatement();
+    }
+
+    /**
+     * Returns the index of the next token.
+     */
+    int index() {
+        return tokens.index;
+    }
+
     /**
      * Parses the {@code field} rule. This method should only be called if the
      * next tokens start a field, aka {@code LET}.
      */
     public Ast.Field parseField() throws ParseException {
-        boolean isConstant = peek("CONST");
-        match("LET");
+        boolean isConstant = peek(Symbols.CONST);
+        match(Symbols.LET);
         String name = "";
         String typeName = "";
 
         // Get identifier
         if (peek(Token.Type.IDENTIFIER)) {
-             if (peek("CONST")){
-                 match("CONST");
+             if (peek(Symbols.CONST)){
+                 match(Symbols.CONST);
                  isConstant = true;
              }
-            name = tokens.get(0).getLiteral();
+            name = tokens.getLiteral(0);
             match(Token.Type.IDENTIFIER);
         } else {
             if (tokens.has(0)) {
@@ -109,7 +389,7 @@ public final class Parser {
 
             // Type
             if (peek(Token.Type.IDENTIFIER)) {
-                typeName = tokens.get(0).getLiteral();
+                typeName = tokens.getLiteral(0);
                 match(Token.Type.IDENTIFIER);
 
                 // get value after type and =
@@ -257,13 +537,13 @@ public final class Parser {
 
 
     public Ast.Method parseMethod() throws ParseException {
-        match("DEF");
+        match(Symbols.DEF);
         String name = "";
         String returnTypeName = "Any";  // Default to "Any"
 
         // Get method name
         if (peek(Token.Type.IDENTIFIER)) {
-            name = tokens.get(0).getLiteral();
+            name = tokens.getLiteral(0);
             match(Token.Type.IDENTIFIER);
         } else {
             if (tokens.has(0)) {
@@ -285,7 +565,7 @@ public final class Parser {
 
         while (peek(Token.Type.IDENTIFIER)) {
             // Get parameter name
-            parameters.add(tokens.get(0).getLiteral());
+            parameters.add(tokens.getLiteral(0));
             match(Token.Type.IDENTIFIER);
 
             if (peek(":")) {
@@ -293,7 +573,7 @@ public final class Parser {
 
                 // Get parameter type
                 if (peek(Token.Type.IDENTIFIER)) {
-                    String paramType = tokens.get(0).getLiteral();
+                    String paramType = tokens.getLiteral(0);
                     match(Token.Type.IDENTIFIER);
                     parameterTypeNames.add(paramType);
                 } else {
@@ -331,7 +611,7 @@ public final class Parser {
         if (peek(":")) {
             match(":");
             if (peek(Token.Type.IDENTIFIER)) {
-                returnTypeName = tokens.get(0).getLiteral();
+                returnTypeName = tokens.getLiteral(0);
                 match(Token.Type.IDENTIFIER);
             } else {
                 throw new ParseException("Expected return type after :", tokens.index);
@@ -341,23 +621,40 @@ public final class Parser {
 //            throw new ParseException("Expected return type after method", tokens.index);
 //        }
 
-        if (peek("DO")) {
-            match("DO");
+        if (peek(Symbols.DO)) {
+            match(Symbols.DO);
         } else {
             if (tokens.has(0)) {
                 throw new ParseException("no DO", tokens.index);
             }
         }
 
+        if (lazy && tokens.tokens != null) {
+            int start = tokens.index;
+            int end = skipMethodBody(tokens.tokens, start);
+            if (end != -1) {
+                TokenBuffer buffer = tokens.tokens;
+                tokens.index = end;
+                return new Ast.Method(name, parameters, parameterTypeNames, Optional.of(returnTypeName),
+                        () -> parseMethodBody(buffer, start, end));
+            }
+        }
+        return new Ast.Method(name, parameters, parameterTypeNames, Optional.of(returnTypeName), parseMethodBody());
+    }
+
+    /**
+     * Parses the statements of a method body and its {@code END}.
+     */
+    private List<Ast.Statement> parseMethodBody() throws ParseException {
         List<Ast.Statement> statements = new ArrayList<>();
 
-        while (!peek("END")) {
+        while (!peek(Symbols.END)) {
             statements.add(parseStatement());
         }
 
-        if (peek("END")) {
-            match("END");
-            return new Ast.Method(name, parameters, parameterTypeNames, Optional.of(returnTypeName), statements);
+        if (peek(Symbols.END)) {
+            match(Symbols.END);
+            return statements;
         } else {
             if (tokens.has(0)) {
                 throw new ParseException("no END", tokens.index);
@@ -366,24 +663,82 @@ public final class Parser {
 
         throw new ParseException("NO METHOD PARSED", tokens.index);
     }
+
+    /**
+     * Parses a method body which {@link #skipMethodBody(TokenBuffer, int)}
+     * found between {@code start} and {@code end}, for a lazily parsed
+     * method.
+     */
+    private static List<Ast.Statement> parseMethodBody(TokenBuffer tokens, int start, int end) throws ParseException {
+        Parser parser = new Parser(tokens);
+        parser.tokens.index = start;
+        List<Ast.Statement> statements = parser.parseMethodBody();
+        if (parser.tokens.index != end) {
+            throw new ParseException("method body does not end at END", end - 1);
+        }
+        return statements;
+    }
+
+    /**
+     * Returns the index after the {@code END} of the method body starting at
+     * {@code start}, or -1 if there is none, without parsing the statements.
+     *
+     * {@code IF}, {@code FOR}, and {@code WHILE} only start a block at the
+     * start of a statement, which is after a {@code ;}, {@code DO},
+     * {@code ELSE}, {@code END}, or the header of a {@code FOR}, and likewise
+     * for {@code END} closing one. An assignment may also end with a
+     * {@code )}, and since no name follows a {@code )} in an expression, one
+     * is treated as the end of a statement too. Keywords elsewhere are names,
+     * as they are to the parser.
+     */
+    private static int skipMethodBody(TokenBuffer tokens, int start) {
+        int depth = 1;
+        int parentheses = -1; // open parentheses in the header of a FOR, or -1 outside of one
+        boolean statement = true;
+        for (int i = start; i < tokens.size(); i++) {
+            int symbol = tokens.getSymbol(i);
+            if (parentheses >= 0) {
+                if (tokens.matches(i, "(")) {
+                    parentheses++;
+                } else if (tokens.matches(i, ")") && --parentheses == 0) {
+                    parentheses = -1;
+                    statement = true;
+                }
+            } else if (statement && (symbol == Symbols.IF || symbol == Symbols.WHILE)) {
+                depth++;
+                statement = false;
+            } else if (statement && symbol == Symbols.FOR) {
+                depth++;
+                parentheses = 0;
+            } else if (statement && symbol == Symbols.END) {
+                if (--depth == 0) {
+                    return i + 1;
+                }
+            } else if (!statement || symbol != Symbols.ELSE) {
+                statement = symbol == Symbols.DO || tokens.matches(i, ";") || tokens.matches(i, ")");
+            }
+        }
+        return -1;
+    }
     /**
      * Parses the {@code statement} rule and delegates to the necessary method.
      * If the next tokens do not start a declaration, if, for, while, or return
      * statement, then it is an expression/assignment statement.
      */
     public Ast.Statement parseStatement() throws ParseException {
-        if (peek("LET")) {
-            return parseDeclarationStatement();
-        } else if (peek("IF")) {
-            return parseIfStatement();
-        } else if (peek("FOR")) {
-            return parseForStatement();
-        } else if (peek("WHILE")) {
-            return parseWhileStatement();
-        } else if (peek("RETURN")) {
-            return parseReturnStatement();
+        int start = tokens.index;
+        if (peek(Symbols.LET)) {
+            return record(parseDeclarationStatement(), start);
+        } else if (peek(Symbols.IF)) {
+            return record(parseIfStatement(), start);
+        } else if (peek(Symbols.FOR)) {
+            return record(parseForStatement(), start);
+        } else if (peek(Symbols.WHILE)) {
+            return record(parseWhileStatement(), start);
+        } else if (peek(Symbols.RETURN)) {
+            return record(parseReturnStatement(), start);
         } else {
-            return parseAssignmentOrExpressionStatement();
+            return record(parseAssignmentOrExpressionStatement(), start);
         }
     }
 
@@ -393,14 +748,15 @@ public final class Parser {
      * statement, aka {@code LET}.
      */
     public Ast.Statement.Declaration parseDeclarationStatement() throws ParseException {
-        if (!match("LET")) {
+        if (!match(Symbols.LET)) {
             throw new ParseException("Expected 'LET'", tokens.index);
         }
 
         if (!peek(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected variable name", tokens.index);
         }
-        String name = tokens.get(0).getLiteral();
+        String name = tokens.getLiteral(0);
+        int symbol = tokens.getSymbol(0);
         tokens.advance();
 
         String typeName = "";
@@ -410,7 +766,7 @@ public final class Parser {
 
             // Type
             if (peek(Token.Type.IDENTIFIER)) {
-                typeName = tokens.get(0).getLiteral();
+                typeName = tokens.getLiteral(0);
                 match(Token.Type.IDENTIFIER);
             }
         } else {
@@ -429,10 +785,10 @@ public final class Parser {
         }
 
         if (typeName.isEmpty()) {
-            return new Ast.Statement.Declaration(name, value);
+            return new Ast.Statement.Declaration(name, symbol, Optional.empty(), value);
         }
 
-        return new Ast.Statement.Declaration(name, Optional.of(typeName), value);
+        return new Ast.Statement.Declaration(name, symbol, Optional.of(typeName), value);
 
     }
 
@@ -442,33 +798,33 @@ public final class Parser {
      * {@code IF}.
      */
     public Ast.Statement.If parseIfStatement() throws ParseException {
-        if (!peek("IF")) {
+        if (!peek(Symbols.IF)) {
             throw new ParseException("Expected 'IF'", tokens.index);
         }
 
-        match("IF");
+        match(Symbols.IF);
 
         Ast.Expression condition = parseExpression();
 
-        if (peek("DO")) {
-            match("DO");
+        if (peek(Symbols.DO)) {
+            match(Symbols.DO);
 
             List<Ast.Statement> elseStatements = new ArrayList<Ast.Statement>();
             List<Ast.Statement> thenStatements = new ArrayList<>(); // expr after IF
 
-            while (!peek("ELSE") && !peek("END")) {
+            while (!peek(Symbols.ELSE) && !peek(Symbols.END)) {
                 thenStatements.add(parseStatement());
             }
 
-            if (peek("ELSE")) {
-                match("ELSE");
+            if (peek(Symbols.ELSE)) {
+                match(Symbols.ELSE);
 
-                while (!peek("END")) {
+                while (!peek(Symbols.END)) {
                     elseStatements.add(parseStatement());
                 }
             }
-            if (peek("END")){
-                match("END");
+            if (peek(Symbols.END)){
+                match(Symbols.END);
                 return new Ast.Statement.If(condition, thenStatements, elseStatements);
             } else {
                 throw new ParseException("NO END, ", tokens.index);
@@ -476,10 +832,10 @@ public final class Parser {
         }
         else {
             if (tokens.has(0)) { // index of the invalid token
-                throw new ParseException("Expected 'DO'", tokens.get(0).getIndex());
+                throw new ParseException("Expected 'DO'", tokens.getIndex(0));
             }
             else {
-                throw new ParseException("Expected 'DO'", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                throw new ParseException("Expected 'DO'", tokens.getIndex(-1) + tokens.getLength(-1));
             }
         }
 
@@ -493,10 +849,10 @@ public final class Parser {
      * {@code FOR}.
      */
     public Ast.Statement.For parseForStatement() throws ParseException {
-        if (!match("FOR")) {
+        if (!match(Symbols.FOR)) {
             throw new ParseException("Expected 'FOR'", tokens.index);
         }
-        match("FOR");
+        match(Symbols.FOR);
 
         if (peek("(")){
             match("(");
@@ -520,7 +876,7 @@ public final class Parser {
 //        }
 
         List<Ast.Statement> statements = new ArrayList<>();
-        while (!match("END")) {
+        while (!match(Symbols.END)) {
             statements.add(parseStatement());
         }
 
@@ -540,16 +896,16 @@ public final class Parser {
      * {@code WHILE}.
      */
     public Ast.Statement.While parseWhileStatement() throws ParseException {
-        if (!peek("WHILE")) {
+        if (!peek(Symbols.WHILE)) {
             throw new ParseException("Expected 'WHILE'", tokens.index);
         }
 
-        match("WHILE"); // while key word found, move forward
+        match(Symbols.WHILE); // while key word found, move forward
         Ast.Expression condition = parseExpression();
 
 
-        if (peek("DO")){
-            match("DO");
+        if (peek(Symbols.DO)){
+            match(Symbols.DO);
         } else{
             throw new ParseException("Expected 'DO'", tokens.index);
 
@@ -558,12 +914,12 @@ public final class Parser {
 
         List<Ast.Statement> statements = new ArrayList<>();
 
-        while (!peek("END")){
+        while (!peek(Symbols.END)){
             statements.add(parseStatement());
         }
 
-        if (peek("END")){
-            match("END");
+        if (peek(Symbols.END)){
+            match(Symbols.END);
             return new Ast.Statement.While(condition, statements);
         } else { // no end
             throw new ParseException("NO END", tokens.index);
@@ -577,7 +933,7 @@ public final class Parser {
      * {@code RETURN}.
      */
     public Ast.Statement.Return parseReturnStatement() throws ParseException {
-        if (!match("RETURN")) {
+        if (!match(Symbols.RETURN)) {
             throw new ParseException("Expected 'RETURN'", tokens.index);
         }
 
@@ -619,92 +975,161 @@ public final class Parser {
     }
 
     /**
-     * Parses the {@code logical-expression} rule.
+     * Parses the {@code logical-expression} rule. All of the binary expression
+     * rules are parsed by {@link #parseBinaryExpression(int)}, which looks up
+     * the precedence of operators in {@link #PRECEDENCE} instead of calling
+     * one method per rule for every operand.
      */
     public Ast.Expression parseLogicalExpression() throws ParseException {
-        Ast.Expression left = parseEqualityExpression();
-
-        while (peek("&&") || peek("||")) {
-            String operator = tokens.get(0).getLiteral();
-            match(Token.Type.OPERATOR);
-            Ast.Expression right = parseEqualityExpression();
-            if (!peek("&&") && !peek("||"))
-                return new Ast.Expression.Binary(operator, left, right);
-            else
-                left = new Ast.Expression.Binary(operator, left, right);
-        }
-
-        return left;
+        return parseBinaryExpression(LOGICAL);
     }
 
     /**
      * Parses the {@code equality-expression} rule.
      */
     public Ast.Expression parseEqualityExpression() throws ParseException {
-        Ast.Expression left = parseAdditiveExpression();
-
-        while (peek("==") || peek("!=") || peek("<") || peek("<=") || peek(">") || peek(">=")) {
-            String operator = tokens.get(0).getLiteral();
-            match(Token.Type.OPERATOR);
-            Ast.Expression right = parseAdditiveExpression();
-            if (!peek("==") && !peek("!=") && !peek("<") && !peek("<=") && !peek(">") && !peek(">="))
-                return new Ast.Expression.Binary(operator, left, right);
-            else
-                left = new Ast.Expression.Binary(operator, left, right);
-        }
-
-        return left;
+        return parseBinaryExpression(EQUALITY);
     }
 
     /**
      * Parses the {@code additive-expression} rule.
      */
     public Ast.Expression parseAdditiveExpression() throws ParseException {
-        Ast.Expression left = parseMultiplicativeExpression();
-
-        while (peek("-") || peek("+")) {
-            match(Token.Type.OPERATOR);
-            String operator = tokens.get(-1).getLiteral();
-            Ast.Expression right = parseMultiplicativeExpression();
-            left = new Ast.Expression.Binary(operator, left, right);
-        }
-
-        return left;
+        return parseBinaryExpression(ADDITIVE);
     }
 
     /**
      * Parses the {@code multiplicative-expression} rule.
      */
     public Ast.Expression parseMultiplicativeExpression() throws ParseException {
-        //Ast.Expression left = parsePrimaryExpression();
-        Ast.Expression left = parseSecondaryExpression();
+        return parseBinaryExpression(MULTIPLICATIVE);
+    }
 
-        while (peek ("*") || peek("/")) {
-            String operator = tokens.get(0).getLiteral();
-            match(Token.Type.OPERATOR);
-            Ast.Expression right = parseSecondaryExpression();
-            if (!peek("*") && !peek("/"))
-                return new Ast.Expression.Binary(operator, left, right);
-            else
-                left = new Ast.Expression.Binary(operator, left, right);
+    /**
+     * Parses a binary expression of operators with at least the given
+     * precedence, all of which are left associative. Grouped expressions
+     * are parsed here too, as they may contain any operator.
+     *
+     * Rather than recursing for each operand and group, operands and operators
+     * are kept on explicit stacks, with {@code null} on the operator stack for
+     * an open group. An operator first combines the operands of any operators
+     * before it with at least its precedence, and the end of a group combines
+     * everything within it. This means long chains of operators and deeply
+     * nested groups only take memory proportional to their length. The stacks
+     * are shared by nested calls, such as for the arguments of a function,
+     * each of which only uses the entries above where it started.
+     */
+    private Ast.Expression parseBinaryExpression(int minimum) throws ParseException {
+        Ast.Expression operand = peek("(") ? null : parseSecondaryExpression();
+        if (operand != null && precedence() < minimum) {
+            return operand; // most operands are not part of a binary expression
         }
+        int operandBase = operandCount;
+        int operatorBase = operatorCount;
+        try {
+            int groups = 0;
+            while (true) {
+                if (operand == null) {
+                    while (peek("(")) {
+                        match("(");
+                        pushOperator(null);
+                        groups++;
+                    }
+                    operand = parseSecondaryExpression();
+                }
+                pushOperand(operand);
+                operand = null;
+                while (true) {
+                    int precedence = precedence();
+                    if (precedence >= (groups > 0 ? LOGICAL : minimum)) {
+                        combine(operatorBase, precedence);
+                        pushOperator(tokens.getOperator(0));
+                        tokens.advance();
+                        break;
+                    } else if (groups > 0) {
+                        combine(operatorBase, LOGICAL);
+                        if (!peek(")")) {
+                            throw new ParseException("Expected closing parentheses ')'", tokens.getIndex(-1) + tokens.getLength(-1));
+                        }
+                        match(")");
+                        operatorCount--;
+                        groups--;
+                        Ast.Expression group = new Ast.Expression.Group(operands[--operandCount]);
+                        pushOperand(parseSecondaryExpression(group));
+                    } else {
+                        combine(operatorBase, LOGICAL);
+                        return operands[operandBase];
+                    }
+                }
+            }
+        } finally {
+            Arrays.fill(operands, operandBase, operandCount, null);
+            operandCount = operandBase;
+            operatorCount = operatorBase;
+        }
+    }
 
-        return left;
+    /**
+     * Combines the operands of the operators at the top of the stack, down to
+     * {@code base} or an open group, which have at least the given precedence.
+     */
+    private void combine(int base, int precedence) {
+        while (operatorCount > base && operators[operatorCount - 1] != null
+                && PRECEDENCE[operators[operatorCount - 1].ordinal()] >= precedence) {
+            Ast.Expression right = operands[--operandCount];
+            Ast.Expression left = operands[operandCount - 1];
+            operands[operandCount - 1] = new Ast.Expression.Binary(operators[--operatorCount].getLiteral(), left, right);
+        }
+    }
+
+    private void pushOperand(Ast.Expression operand) {
+        if (operandCount == operands.length) {
+            operands = Arrays.copyOf(operands, 2 * operandCount);
+        }
+        operands[operandCount++] = operand;
+    }
+
+    private void pushOperator(Token.Operator operator) {
+        if (operatorCount == operators.length) {
+            operators = Arrays.copyOf(operators, 2 * operatorCount);
+        }
+        operators[operatorCount++] = operator;
+    }
+
+    /**
+     * Returns the precedence of the next token as a binary operator, or -1 if
+     * it is not one.
+     */
+    private int precedence() {
+        if (!tokens.has(0) || tokens.getType(0) != Token.Type.OPERATOR) {
+            return -1;
+        }
+        Token.Operator operator = tokens.getOperator(0);
+        return operator == null ? -1 : PRECEDENCE[operator.ordinal()];
     }
 
     /**
      * Parses the {@code secondary-expression} rule.
      */
     public Ast.Expression parseSecondaryExpression() throws ParseException {
-        Ast.Expression receiver = parsePrimaryExpression();
+        return parseSecondaryExpression(parsePrimaryExpression());
+    }
+
+    /**
+     * Parses the fields and methods accessed on {@code receiver} in the
+     * {@code secondary-expression} rule.
+     */
+    private Ast.Expression parseSecondaryExpression(Ast.Expression receiver) throws ParseException {
         if (!peek(".")) { // nothing after primary
             return receiver;
         } else {
             String member = "";
+            int symbol = Symbols.NONE;
             while (peek(".")) { // continue to get members
                 match(".");
                 if (peek(Token.Type.IDENTIFIER)) {
-                    member = tokens.get(0).getLiteral();
+                    member = tokens.getLiteral(0);
+                    symbol = tokens.getSymbol(0);
                     match(Token.Type.IDENTIFIER);
                 } else {
                     throw new ParseException("Expected identifier type", tokens.index);
@@ -724,15 +1149,15 @@ public final class Parser {
                     // ensure close )
                     match(")");
                     if (!peek(".")) { // just function call
-                        return new Ast.Expression.Function(Optional.of(receiver), member, arguments);
+                        return new Ast.Expression.Function(Optional.of(receiver), member, symbol, arguments);
                     } else { // keep going
-                        receiver = new Ast.Expression.Function(Optional.of(receiver), member, arguments);
+                        receiver = new Ast.Expression.Function(Optional.of(receiver), member, symbol, arguments);
                     }
                 } else {
                     if (!peek(".")) {
-                        return new Ast.Expression.Access(Optional.of(receiver), member);
+                        return new Ast.Expression.Access(Optional.of(receiver), member, symbol);
                     } else {
-                        receiver = new Ast.Expression.Access(Optional.of(receiver), member);
+                        receiver = new Ast.Expression.Access(Optional.of(receiver), member, symbol);
                     }
                 }
             }
@@ -749,19 +1174,20 @@ public final class Parser {
     public Ast.Expression parsePrimaryExpression() throws ParseException {
         if (peek(Token.Type.INTEGER)) {
             // Integer literal
-            BigInteger val = new BigInteger(tokens.get(0).getLiteral());
+            // Parsed by the lexer, unless the token was created with an invalid literal
+            BigInteger val = tokens.getValue(0) != null ? (BigInteger) tokens.getValue(0) : new BigInteger(tokens.getLiteral(0));
             match(Token.Type.INTEGER);
             return new Ast.Expression.Literal(val);
         } else if (peek(Token.Type.DECIMAL)) {
             // Decimal literal
-            BigDecimal val = new BigDecimal(tokens.get(0).getLiteral());
+            BigDecimal val = tokens.getValue(0) != null ? (BigDecimal) tokens.getValue(0) : new BigDecimal(tokens.getLiteral(0));
             match(Token.Type.DECIMAL);
             return new Ast.Expression.Literal(val);
         } else if (peek(Token.Type.CHARACTER)) {
             // Character literal
             // 's' e.g.
-            if (tokens.get(0).getLiteral().length() < 4) { // not escape char
-                char c = tokens.get(0).getLiteral().charAt(1);
+            if (tokens.getLength(0) < 4) { // not escape char
+                char c = tokens.getLiteralView(0).charAt(1);
                 // System.out.println(c);
                 match(Token.Type.CHARACTER);
                 return new Ast.Expression.Literal(c);
@@ -769,7 +1195,7 @@ public final class Parser {
 //                char c = tokens.get(0).getLiteral().charAt(1);
 //                match(Token.Type.CHARACTER);
 //                return new Ast.Expression.Literal(c);
-                String temp = tokens.get(0).getLiteral();
+                String temp = tokens.getLiteral(0);
                 // BREAK THIS INTO MODULAR METHOD: ////////////////////////////
                 temp = temp.replace("\\b", "\b");
                 temp = temp.replace("\\n", "\n");
@@ -788,7 +1214,7 @@ public final class Parser {
         } else if (peek(Token.Type.STRING)) {
             // String literal
             match(Token.Type.STRING);
-            String temp = tokens.get(-1).getLiteral();
+            String temp = tokens.getLiteral(-1);
             temp = temp.replace("\\\"", "\"");
             temp = temp.replace("\\\\", "\\");
             temp = temp.replace("\\\'", "\'");
@@ -801,18 +1227,19 @@ public final class Parser {
         } else if (peek(Token.Type.IDENTIFIER)) {
 
             // Variable reference or function call
-            String identifier = tokens.get(0).getLiteral();
+            String identifier = tokens.getLiteral(0);
+            int symbol = tokens.getSymbol(0);
 
             match(Token.Type.IDENTIFIER);
-            if (tokens.get(-1).getLiteral().equals("NIL")) {
-                match("NIL");
+            if (tokens.getSymbol(-1) == Symbols.NIL) {
+                match(Symbols.NIL);
                 return new Ast.Expression.Literal(null);
             }
-            else if (tokens.get(-1).getLiteral().equals("TRUE")) {
+            else if (tokens.getSymbol(-1) == Symbols.TRUE) {
                 Boolean temp = true;
                 return new Ast.Expression.Literal(temp);
             }
-            else if (tokens.get(-1).getLiteral().equals("FALSE")) {
+            else if (tokens.getSymbol(-1) == Symbols.FALSE) {
                 Boolean temp = false;
                 return new Ast.Expression.Literal(temp);
             }
@@ -822,19 +1249,16 @@ public final class Parser {
             // Check if it's a function call
             if (peek("(")) {
                 // Parse function call
-                return parseFunctionCall(Optional.empty(), identifier);
+                return parseFunctionCall(Optional.empty(), identifier, symbol);
             } else {
                 // Variable reference
-                return new Ast.Expression.Access(Optional.empty(), identifier);
+                return new Ast.Expression.Access(Optional.empty(), identifier, symbol);
             }
         } else if (match("(")) {
             // Grouped expression (e.g., "(expr)")
             Ast.Expression expression = parseExpression();
             if (!peek(")")) {
-                if (!peek("+") && !peek("-") && !peek("*") && !peek("/") && !peek("&&") && !peek("||") && !peek("<") && !peek("<=") && !peek(">") && !peek(">=") && !peek("==") && !peek("!=")) {
-                    // match(")");
-                    throw new ParseException("Expected closing parentheses ')'", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-                }
+                throw new ParseException("Expected closing parentheses ')'", tokens.getIndex(-1) + tokens.getLength(-1));
             }
             match(")");
             return new Ast.Expression.Group(expression);
@@ -846,7 +1270,7 @@ public final class Parser {
     }
 
     // helper func
-    private Ast.Expression parseFunctionCall(Optional<Ast.Expression> receiver, String name) throws ParseException {
+    private Ast.Expression parseFunctionCall(Optional<Ast.Expression> receiver, String name, int symbol) throws ParseException {
         match("("); // Consume '('
 
         List<Ast.Expression> arguments = new ArrayList<>();
@@ -860,7 +1284,7 @@ public final class Parser {
             throw new ParseException("Expected closing parenthesis ')'", tokens.index);
         }
 
-        return new Ast.Expression.Function(receiver, name, arguments);
+        return new Ast.Expression.Function(receiver, name, symbol, arguments);
     }
 
     /**
@@ -872,17 +1296,25 @@ public final class Parser {
      *
      * In other words, {@code Token(IDENTIFIER, "literal")} is matched by both
      * {@code peek(Token.Type.IDENTIFIER)} and {@code peek("literal")}.
+     *
+     * A pattern may also be an {@link Integer} symbol id from {@link Symbols},
+     * which matches an identifier with that symbol. Keywords are matched this
+     * way, as in {@code peek(Symbols.LET)}, comparing ids instead of literals.
      */
     private boolean peek(Object... patterns) {
         for (int i = 0; i < patterns.length; i++) {
             if (!tokens.has(i)) {
                 return false;
             } else if (patterns[i] instanceof Token.Type) {
-                if (patterns[i] != tokens.get(i).getType()) {
+                if (patterns[i] != tokens.getType(i)) {
                     return false;
                 }
             } else if (patterns[i] instanceof String) {
-                if (!patterns[i].equals(tokens.get(i).getLiteral())) {
+                if (!tokens.matches(i, (String) patterns[i])) {
+                    return false;
+                }
+            } else if (patterns[i] instanceof Integer) {
+                if ((Integer) patterns[i] != tokens.getSymbol(i)) {
                     return false;
                 }
             } else {
@@ -907,27 +1339,125 @@ public final class Parser {
 
     }
 
+    /**
+     * The tokens being parsed, either all held in a {@link TokenBuffer} or
+     * pulled from an iterator into a ring buffer of the last {@link #WINDOW}
+     * tokens. The parser looks at most one token behind and a few ahead, so
+     * the window always holds the tokens it asks for.
+     */
     private static final class TokenStream {
 
-        private final List<Token> tokens;
+        private static final int WINDOW = 8; // a power of two
+
+        private final TokenBuffer tokens; // null when pulling from source
+        private final Iterator<Token> source;
+        private final Token[] window;
+        private int pulled = 0; // the number of tokens pulled from source
         private int index = 0;
 
-        private TokenStream(List<Token> tokens) {
+        private TokenStream(TokenBuffer tokens) {
             this.tokens = tokens;
+            this.source = null;
+            this.window = null;
+        }
+
+        private TokenStream(Iterator<Token> source) {
+            this.tokens = null;
+            this.source = source;
+            this.window = new Token[WINDOW];
         }
 
         /**
          * Returns true if there is a token at index + offset.
          */
         public boolean has(int offset) {
-            return index + offset < tokens.size();
+            if (tokens != null) {
+                return index + offset < tokens.size();
+            }
+            while (pulled <= index + offset && source.hasNext()) {
+                window[pulled++ & (WINDOW - 1)] = source.next();
+            }
+            return index + offset < pulled;
+        }
+
+        /**
+         * Returns the pulled token at index + offset, pulling it if needed.
+         */
+        private Token get(int offset) {
+            int i = index + offset;
+            if (i < 0 || !has(offset)) {
+                throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + pulled);
+            } else if (i < pulled - WINDOW) {
+                throw new IllegalStateException("Token " + i + " is no longer buffered.");
+            }
+            return window[i & (WINDOW - 1)];
+        }
+
+        /**
+         * Gets the type of the token at index + offset.
+         */
+        public Token.Type getType(int offset) {
+            return tokens != null ? tokens.getType(index + offset) : get(offset).getType();
+        }
+
+        /**
+         * Gets the literal of the token at index + offset.
+         */
+        public String getLiteral(int offset) {
+            return tokens != null ? tokens.getLiteral(index + offset) : get(offset).getLiteral();
+        }
+
+        /**
+         * Gets the literal of the token at index + offset without copying it,
+         * for reading characters which do not end up in the AST.
+         */
+        public CharSequence getLiteralView(int offset) {
+            return tokens != null ? tokens.getLiteralView(index + offset) : get(offset).getLiteralView();
+        }
+
+        /**
+         * Gets the length of the literal of the token at index + offset.
+         */
+        public int getLength(int offset) {
+            return tokens != null ? tokens.getLength(index + offset) : get(offset).getLiteralView().length();
+        }
+
+        /**
+         * Gets the index in the source of the token at index + offset.
+         */
+        public int getIndex(int offset) {
+            return tokens != null ? tokens.getIndex(index + offset) : get(offset).getIndex();
+        }
+
+        /**
+         * Gets the value of the number token at index + offset, as {@link
+         * Token#getValue()}.
+         */
+        public Number getValue(int offset) {
+            return tokens != null ? tokens.getValue(index + offset) : get(offset).getValue();
+        }
+
+        /**
+         * Gets the binary operator of the token at index + offset, as {@link
+         * Token#getOperator()}.
+         */
+        public Token.Operator getOperator(int offset) {
+            return tokens != null ? tokens.getOperator(index + offset) : get(offset).getOperator();
+        }
+
+        /**
+         * Gets the {@link Symbols} id of the token at index + offset.
+         */
+        public int getSymbol(int offset) {
+            return tokens != null ? tokens.getSymbol(index + offset) : get(offset).getSymbol();
         }
 
         /**
-         * Gets the token at index + offset.
+         * Returns true if the literal of the token at index + offset equals
+         * the given literal.
          */
-        public Token get(int offset) {
-            return tokens.get(index + offset);
+        public boolean matches(int offset, String literal) {
+            return tokens != null ? tokens.matches(index + offset, literal) : literal.contentEquals(get(offset).getLiteralView());
         }
 
         /**
@@ -0,0 +1,307 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A rewriting pass over an analyzed AST, run by a {@link PassManager}.
+ *
+ * Each visit returns the rewritten node. The default visits rebuild a node
+ * only when one of its children was rewritten and otherwise return it
+ * unchanged, so a pass overrides just the nodes it cares about and unchanged
+ * subtrees are shared with the original. Rebuilt nodes keep the variable,
+ * function, or type the {@link Analyzer} set on the original, and a pass
+ * which replaces a node with something else counts it with
+ * {@link #changed(Ast)}.
+ *
+ * Binary and group expressions are rewritten with an explicit stack, like the
+ * {@link Interpreter}, so a pass rewrites them by overriding
+ * {@link #rewrite(Ast.Expression.Binary, Ast.Expression, Ast.Expression)} and
+ * {@link #rewrite(Ast.Expression.Group, Ast.Expression)} instead of their
+ * visits.
+ */
+public abstract class Pass implements Ast.Visitor<Ast> {
+
+    private int changes = 0;
+
+    /**
+     * Returns the name of the pass, used in reports and errors.
+     */
+    public abstract String getName();
+
+    /**
+     * Rewrites the source, returning it unchanged if there is nothing to do.
+     */
+    public Ast.Source run(Ast.Source source) {
+        changes = 0;
+        return (Ast.Source) visit(source);
+    }
+
+    /**
+     * Returns the number of nodes changed by the last run.
+     */
+    public int getChanges() {
+        return changes;
+    }
+
+    /**
+     * Counts a changed node, returning it.
+     */
+    protected <T extends Ast> T changed(T ast) {
+        changes++;
+        return ast;
+    }
+
+    /**
+     * Copies the variable, function, or type of the original node to its
+     * replacement, returning the replacement.
+     */
+    protected static <T extends Ast> T annotate(T ast, Ast original) {
+        Ast.setAnnotation(ast, Ast.getAnnotation(original));
+        return ast;
+    }
+
+    /**
+     * Rewrites a list of statements, returning the same list if none of them
+     * changed. A pass which removes or adds statements overrides this.
+     */
+    protected List<Ast.Statement> visitStatements(List<Ast.Statement> statements) {
+        List<Ast.Statement> rewritten = null;
+        for (int i = 0; i < statements.size(); i++) {
+            Ast.Statement statement = (Ast.Statement) visit(statements.get(i));
+            if (rewritten == null && statement != statements.get(i)) {
+                rewritten = new ArrayList<>(statements.subList(0, i));
+            }
+            if (rewritten != null) {
+                rewritten.add(statement);
+            }
+        }
+        return rewritten != null ? rewritten : statements;
+    }
+
+    /**
+     * Rewrites a list of expressions, returning the same list if none of
+     * them changed.
+     */
+    protected List<Ast.Expression> visitExpressions(List<Ast.Expression> expressions) {
+        List<Ast.Expression> rewritten = null;
+        for (int i = 0; i < expressions.size(); i++) {
+            Ast.Expression expression = (Ast.Expression) visit(expressions.get(i));
+            if (rewritten == null && expression != expressions.get(i)) {
+                rewritten = new ArrayList<>(expressions.subList(0, i));
+            }
+            if (rewritten != null) {
+                rewritten.add(expression);
+            }
+        }
+        return rewritten != null ? rewritten : expressions;
+    }
+
+    /**
+     * Rewrites an optional expression, returning the same optional if it did
+     * not change.
+     */
+    protected Optional<Ast.Expression> visitOptional(Optional<Ast.Expression> expression) {
+        if (expression.isPresent()) {
+            Ast.Expression rewritten = (Ast.Expression) visit(expression.get());
+            if (rewritten != expression.get()) {
+                return Optional.of(rewritten);
+            }
+        }
+        return expression;
+    }
+
+    @Override
+    public Ast visit(Ast.Source ast) {
+        List<Ast.Field> fields = new ArrayList<>();
+        boolean rewritten = false;
+        for (Ast.Field field : ast.getFields()) {
+            fields.add((Ast.Field) visit(field));
+            rewritten |= fields.get(fields.size() - 1) != field;
+        }
+        List<Ast.Method> methods = new ArrayList<>();
+        for (Ast.Method method : ast.getMethods()) {
+            methods.add((Ast.Method) visit(method));
+            rewritten |= methods.get(methods.size() - 1) != method;
+        }
+        return rewritten ? new Ast.Source(fields, methods) : ast;
+    }
+
+    @Override
+    public Ast visit(Ast.Field ast) {
+        Optional<Ast.Expression> value = visitOptional(ast.getValue());
+        if (value == ast.getValue()) {
+            return ast;
+        }
+        return annotate(new Ast.Field(ast.getName(), ast.getTypeName(), ast.getConstant(), value), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Method ast) {
+        List<Ast.Statement> statements = visitStatements(ast.getStatements());
+        if (statements == ast.getStatements()) {
+            return ast;
+        }
+        return annotate(new Ast.Method(ast.getName(), ast.getParameters(), ast.getParameterTypeNames(),
+                ast.getReturnTypeName(), statements), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Expression ast) {
+        Ast.Expression expression = (Ast.Expression) visit(ast.getExpression());
+        return expression != ast.getExpression() ? new Ast.Statement.Expression(expression) : ast;
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Declaration ast) {
+        Optional<Ast.Expression> value = visitOptional(ast.getValue());
+        if (value == ast.getValue()) {
+            return ast;
+        }
+        return annotate(new Ast.Statement.Declaration(ast.getName(), ast.getSymbol(), ast.getTypeName(), value), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Assignment ast) {
+        Ast.Expression receiver = (Ast.Expression) visit(ast.getReceiver());
+        Ast.Expression value = (Ast.Expression) visit(ast.getValue());
+        if (receiver == ast.getReceiver() && value == ast.getValue()) {
+            return ast;
+        }
+        return new Ast.Statement.Assignment(receiver, value);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.If ast) {
+        Ast.Expression condition = (Ast.Expression) visit(ast.getCondition());
+        List<Ast.Statement> thenStatements = visitStatements(ast.getThenStatements());
+        List<Ast.Statement> elseStatements = visitStatements(ast.getElseStatements());
+        if (condition == ast.getCondition() && thenStatements == ast.getThenStatements()
+                && elseStatements == ast.getElseStatements()) {
+            return ast;
+        }
+        return new Ast.Statement.If(condition, thenStatements, elseStatements);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.For ast) {
+        Ast.Statement initialization = ast.getInitialization() != null
+                ? (Ast.Statement) visit(ast.getInitialization()) : null;
+        Ast.Expression condition = (Ast.Expression) visit(ast.getCondition());
+        Ast.Statement increment = ast.getIncrement() != null
+                ? (Ast.Statement) visit(ast.getIncrement()) : null;
+        List<Ast.Statement> statements = visitStatements(ast.getStatements());
+        if (initialization == ast.getInitialization() && condition == ast.getCondition()
+                && increment == ast.getIncrement() && statements == ast.getStatements()) {
+            return ast;
+        }
+        return new Ast.Statement.For(initialization, condition, increment, statements);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.While ast) {
+        Ast.Expression condition = (Ast.Expression) visit(ast.getCondition());
+        List<Ast.Statement> statements = visitStatements(ast.getStatements());
+        if (condition == ast.getCondition() && statements == ast.getStatements()) {
+            return ast;
+        }
+        return new Ast.Statement.While(condition, statements);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Return ast) {
+        Ast.Expression value = (Ast.Expression) visit(ast.getValue());
+        return value != ast.getValue() ? new Ast.Statement.Return(value) : ast;
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Literal ast) {
+        return ast;
+    }
+
+    @Override
+    public final Ast visit(Ast.Expression.Group ast) {
+        return rewriteNested(ast);
+    }
+
+    @Override
+    public final Ast visit(Ast.Expression.Binary ast) {
+        return rewriteNested(ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Access ast) {
+        Optional<Ast.Expression> receiver = visitOptional(ast.getReceiver());
+        if (receiver == ast.getReceiver()) {
+            return ast;
+        }
+        return annotate(new Ast.Expression.Access(receiver, ast.getName(), ast.getSymbol()), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Function ast) {
+        Optional<Ast.Expression> receiver = visitOptional(ast.getReceiver());
+        List<Ast.Expression> arguments = visitExpressions(ast.getArguments());
+        if (receiver == ast.getReceiver() && arguments == ast.getArguments()) {
+            return ast;
+        }
+        return annotate(new Ast.Expression.Function(receiver, ast.getName(), ast.getSymbol(), arguments), ast);
+    }
+
+    /**
+     * Rewrites a group given its rewritten expression.
+     */
+    protected Ast.Expression rewrite(Ast.Expression.Group ast, Ast.Expression expression) {
+        return expression != ast.getExpression() ? annotate(new Ast.Expression.Group(expression), ast) : ast;
+    }
+
+    /**
+     * Rewrites a binary expression given both of its rewritten sides.
+     */
+    protected Ast.Expression rewrite(Ast.Expression.Binary ast, Ast.Expression left, Ast.Expression right) {
+        if (left == ast.getLeft() && right == ast.getRight()) {
+            return ast;
+        }
+        return annotate(new Ast.Expression.Binary(ast.getOperator(), left, right), ast);
+    }
+
+    /**
+     * Rewrites nested binary and group expressions bottom up with an explicit
+     * stack instead of recursion, so long chains of operators and deeply
+     * nested groups do not overflow the Java stack.
+     */
+    private Ast.Expression rewriteNested(Ast.Expression expression) {
+        List<Ast.Expression> nodes = new ArrayList<>();
+        List<Ast.Expression> lefts = new ArrayList<>(); // null until the left of the binary is rewritten
+        Ast.Expression current = expression;
+        while (true) {
+            while (current instanceof Ast.Expression.Binary || current instanceof Ast.Expression.Group) {
+                nodes.add(current);
+                lefts.add(null);
+                current = current instanceof Ast.Expression.Binary
+                        ? ((Ast.Expression.Binary) current).getLeft()
+                        : ((Ast.Expression.Group) current).getExpression();
+            }
+            Ast.Expression value = (Ast.Expression) visit(current);
+            while (true) {
+                if (nodes.isEmpty()) {
+                    return value;
+                }
+                int top = nodes.size() - 1;
+                if (nodes.get(top) instanceof Ast.Expression.Binary && lefts.get(top) == null) {
+                    lefts.set(top, value);
+                    current = ((Ast.Expression.Binary) nodes.get(top)).getRight();
+                    break;
+                } else if (nodes.get(top) instanceof Ast.Expression.Binary) {
+                    value = rewrite((Ast.Expression.Binary) nodes.get(top), lefts.get(top), value);
+                } else {
+                    value = rewrite((Ast.Expression.Group) nodes.get(top), value);
+                }
+                nodes.remove(top);
+                lefts.remove(top);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs an ordered list of {@link Pass}es over an analyzed source, between the
+ * {@link Analyzer} and the {@link Interpreter} or {@link Generator}, so both
+ * back ends benefit from the same rewrites.
+ *
+ * When verification is enabled, the result of each pass is checked by
+ * analyzing a copy of it again and comparing the variables, functions, and
+ * types the {@link Analyzer} sets to those the pass left, so a pass which
+ * produces an ill-typed or inconsistently annotated AST fails immediately with
+ * its name instead of in a back end.
+ */
+public final class PassManager {
+
+    private final List<Pass> passes;
+    private final boolean verify;
+
+    /**
+     * Creates a pass manager which runs the passes in order, verifying the
+     * result of each.
+     */
+    public PassManager(List<Pass> passes) {
+        this(passes, true);
+    }
+
+    public PassManager(List<Pass> passes, boolean verify) {
+        this.passes = List.copyOf(passes);
+        this.verify = verify;
+    }
+
+    /**
+     * The time taken and the number of nodes changed by one run of a pass.
+     */
+    public static final class Report {
+
+        private final String name;
+        private final long nanos;
+        private final int changes;
+
+        private Report(String name, long nanos, int changes) {
+            this.name = name;
+            this.nanos = nanos;
+            this.changes = changes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the time taken by the pass in nanoseconds, not including
+         * verification.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        public int getChanges() {
+            return changes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d changed in %.3f ms", name, changes, nanos / 1e6);
+        }
+
+    }
+
+    /**
+     * The rewritten source and a report for each pass, in order.
+     */
+    public static final class Result {
+
+        private final Ast.Source source;
+        private final List<Report> reports;
+
+        private Result(Ast.Source source, List<Report> reports) {
+            this.source = source;
+            this.reports = reports;
+        }
+
+        public Ast.Source getSource() {
+            return source;
+        }
+
+        public List<Report> getReports() {
+            return reports;
+        }
+
+    }
+
+    /**
+     * Runs the passes over an analyzed source. An {@link IllegalStateException}
+     * naming the pass is thrown if verification fails.
+     */
+    public Result run(Ast.Source source) {
+        List<Report> reports = new ArrayList<>();
+        for (Pass pass : passes) {
+            long start = System.nanoTime();
+            source = pass.run(source);
+            reports.add(new Report(pass.getName(), System.nanoTime() - start, pass.getChanges()));
+            if (verify) {
+                verify(pass, source);
+            }
+        }
+        return new Result(source, List.copyOf(reports));
+    }
+
+    /**
+     * Analyzes a copy of the source, so the annotations of the source itself
+     * are left as the pass set them, and requires that the copy is annotated
+     * the same way.
+     */
+    private static void verify(Pass pass, Ast.Source source) {
+        FlatAst flat = FlatAst.of(source);
+        Ast.Source copy = (Ast.Source) flat.get(flat.getRoot());
+        try {
+            new Analyzer(new Scope(null)).visit(copy);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Pass " + pass.getName() + " produced an invalid AST.", e);
+        }
+        if (!copy.equals(source)) {
+            throw new IllegalStateException("Pass " + pass.getName() + " left annotations which differ from the Analyzer's.");
+        }
+    }
+
+}
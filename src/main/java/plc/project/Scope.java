@@ -1,16 +1,20 @@
 package plc.project;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 
+/**
+ * Variables and functions are keyed by their {@link Symbols} id (and arity for
+ * functions), so lookups compare integers rather than hashing names.
+ */
 public final class Scope {
 
     private final Scope parent;
-    public final Map<String, Environment.Variable> variables = new HashMap<>();
-    public final Map<String, Environment.Function> functions = new HashMap<>();
+    private final SymbolMap<Environment.Variable> variables = new SymbolMap<>();
+    private final SymbolMap<Environment.Function> functions = new SymbolMap<>();
 
     public Scope(Scope parent) {
         this.parent = parent;
@@ -25,23 +29,36 @@ public final class Scope {
     }
 
     public Environment.Variable defineVariable(String name, String jvmName, Environment.Type type, boolean constant, Environment.PlcObject value) {
-        if (variables.containsKey(name)) {
+        return defineVariable(Symbols.intern(name), jvmName, type, constant, value);
+    }
+
+    /**
+     * Defines a variable named by an already interned symbol, such as that of
+     * an {@link Ast.Statement.Declaration}.
+     */
+    public Environment.Variable defineVariable(int symbol, String jvmName, Environment.Type type, boolean constant, Environment.PlcObject value) {
+        String name = Symbols.getName(symbol);
+        if (variables.get(symbol) != null) {
             throw new RuntimeException("The variable " + name + " is already defined in this scope.");
         } else {
             Environment.Variable variable = new Environment.Variable(name, jvmName, type, constant, value);
-            variables.put(variable.getName(), variable);
-            return variables.get(name);
+            variables.put(symbol, variable);
+            return variable;
         }
     }
 
     public Environment.Variable lookupVariable(String name) {
-        if (variables.containsKey(name)) {
-            return variables.get(name);
-        } else if (parent != null) {
-            return parent.lookupVariable(name);
-        } else {
-            throw new RuntimeException("The variable " + name + " is not defined in this scope.");
+        return lookupVariable(Symbols.intern(name));
+    }
+
+    public Environment.Variable lookupVariable(int symbol) {
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            Environment.Variable variable = scope.variables.get(symbol);
+            if (variable != null) {
+                return variable;
+            }
         }
+        throw new RuntimeException("The variable " + Symbols.getName(symbol) + " is not defined in this scope.");
     }
 
     public void defineFunction(String name, int arity, Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
@@ -53,32 +70,117 @@ public final class Scope {
     }
 
     public Environment.Function defineFunction(String name, String jvmName, List<Environment.Type> parameterTypes, Environment.Type returnType, java.util.function.Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
-        if (functions.containsKey(name + "/" + parameterTypes.size())) {
+        long key = functionKey(Symbols.intern(name), parameterTypes.size());
+        if (functions.get(key) != null) {
             throw new RuntimeException("The function " + name + "/" + parameterTypes.size() + " is already defined in this scope.");
         } else {
             Environment.Function func = new Environment.Function(name, jvmName, parameterTypes, returnType, function);
-            functions.put(func.getName() + "/" + func.getParameterTypes().size(), func);
+            functions.put(key, func);
             return func;
         }
     }
 
     public Environment.Function lookupFunction(String name, int arity) {
-        if (functions.containsKey(name + "/" + arity)) {
-            return functions.get(name + "/" + arity);
-        } else if (parent != null) {
-            return parent.lookupFunction(name, arity);
-        } else {
-            throw new RuntimeException("The function " + name + "/" + arity + " is not defined in this scope.");
+        return lookupFunction(Symbols.intern(name), arity);
+    }
+
+    public Environment.Function lookupFunction(int symbol, int arity) {
+        long key = functionKey(symbol, arity);
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            Environment.Function function = scope.functions.get(key);
+            if (function != null) {
+                return function;
+            }
         }
+        throw new RuntimeException("The function " + Symbols.getName(symbol) + "/" + arity + " is not defined in this scope.");
+    }
+
+    private static long functionKey(int symbol, int arity) {
+        return ((long) symbol << 32) | arity;
     }
 
     @Override
     public String toString() {
+        List<String> variableNames = new ArrayList<>();
+        variables.forEach((key, variable) -> variableNames.add(variable.getName()));
+        List<String> functionNames = new ArrayList<>();
+        functions.forEach((key, function) -> functionNames.add(function.getName() + "/" + function.getArity()));
         return "Scope{" +
                 "parent=" + parent +
-                ", variables=" + variables.keySet() +
-                ", functions=" + functions.keySet() +
+                ", variables=" + variableNames +
+                ", functions=" + functionNames +
                 '}';
     }
 
+    /**
+     * An open addressing map from non-negative keys to values, in insertion
+     * order for {@link #forEach}. Most scopes only hold a few entries, so the
+     * arrays are allocated on the first {@link #put}.
+     */
+    private static final class SymbolMap<V> {
+
+        private long[] keys;
+        private Object[] values;
+        private int[] slots; // open addressing, storing entry index + 1 (0 is empty)
+        private int size = 0;
+
+        @SuppressWarnings("unchecked")
+        V get(long key) {
+            if (slots == null) {
+                return null;
+            }
+            int mask = slots.length - 1;
+            for (int slot = hash(key) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+                int entry = slots[slot] - 1;
+                if (keys[entry] == key) {
+                    return (V) values[entry];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Adds a key which is not already in the map.
+         */
+        void put(long key, V value) {
+            if (slots == null) {
+                keys = new long[4];
+                values = new Object[4];
+                slots = new int[8];
+            } else if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+                slots = new int[slots.length * 2];
+                for (int entry = 0; entry < size; entry++) {
+                    insert(keys[entry], entry);
+                }
+            }
+            keys[size] = key;
+            values[size] = value;
+            insert(key, size++);
+        }
+
+        @SuppressWarnings("unchecked")
+        void forEach(BiConsumer<Long, V> action) {
+            for (int entry = 0; entry < size; entry++) {
+                action.accept(keys[entry], (V) values[entry]);
+            }
+        }
+
+        private void insert(long key, int entry) {
+            int mask = slots.length - 1;
+            int slot = hash(key) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry + 1;
+        }
+
+        private static int hash(long key) {
+            int hash = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+
+    }
+
 }
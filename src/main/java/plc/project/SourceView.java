@@ -0,0 +1,69 @@
+package plc.project;
+
+/**
+ * A view of a range of the source, used as the literal of a token so lexing
+ * does not copy the characters of every token. The characters are only copied
+ * by {@link #toString()}.
+ *
+ * Two views are equal if they contain the same characters, with the same hash
+ * code as the equivalent {@link String}. A view is never equal to a string;
+ * compare them with {@link CharSequence#compare(CharSequence, CharSequence)}.
+ */
+public final class SourceView implements CharSequence {
+
+    private final String source;
+    private final int offset;
+    private final int length;
+
+    public SourceView(String source, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > source.length()) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " out of bounds for length " + source.length());
+        }
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new StringIndexOutOfBoundsException(index);
+        }
+        return source.charAt(offset + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length) {
+            throw new StringIndexOutOfBoundsException("begin " + start + ", end " + end + ", length " + length);
+        }
+        return new SourceView(source, offset + start, end - start);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof SourceView
+                && length == ((SourceView) obj).length
+                && source.regionMatches(offset, ((SourceView) obj).source, ((SourceView) obj).offset, length);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return source.substring(offset, offset + length);
+    }
+
+}
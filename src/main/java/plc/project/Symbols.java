@@ -0,0 +1,157 @@
+package plc.project;
+
+/**
+ * The global symbol table, assigning each distinct identifier a small integer
+ * id. Keywords are interned first and so have the fixed ids below, which lets
+ * the parser compare keywords as integers.
+ *
+ * Interning returns the same canonical {@link String} for every occurrence of
+ * a name, and the table is never cleared, so it should only hold identifiers
+ * from source code.
+ */
+public final class Symbols {
+
+    public static final int NONE = -1;
+
+    public static final int LET = 0;
+    public static final int CONST = 1;
+    public static final int DEF = 2;
+    public static final int DO = 3;
+    public static final int END = 4;
+    public static final int IF = 5;
+    public static final int ELSE = 6;
+    public static final int FOR = 7;
+    public static final int WHILE = 8;
+    public static final int RETURN = 9;
+    public static final int NIL = 10;
+    public static final int TRUE = 11;
+    public static final int FALSE = 12;
+
+    private static final String[] KEYWORDS = {
+            "LET", "CONST", "DEF", "DO", "END", "IF", "ELSE", "FOR", "WHILE", "RETURN", "NIL", "TRUE", "FALSE"
+    };
+
+    private static volatile String[] names = new String[64];
+    private static int size = 0; // guarded by the class lock
+    private static volatile int[] table = new int[128]; // open addressing, storing id + 1 (0 is empty)
+
+    static {
+        for (String keyword : KEYWORDS) {
+            intern(keyword);
+        }
+    }
+
+    private Symbols() {}
+
+    /**
+     * Returns the id of the given name, interning it if necessary.
+     */
+    public static int intern(String name) {
+        int hash = name.hashCode();
+        int symbol = find(name, 0, name.length(), hash);
+        return symbol != NONE ? symbol : add(name, 0, name.length(), hash);
+    }
+
+    /**
+     * Returns the id of the characters from {@code start} to {@code end},
+     * interning them if necessary. The characters are only copied the first
+     * time they are interned.
+     */
+    public static int intern(CharSequence chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+        int symbol = find(chars, start, end, hash);
+        return symbol != NONE ? symbol : add(chars, start, end, hash);
+    }
+
+    /**
+     * Returns the canonical name of the given symbol.
+     */
+    public static String getName(int symbol) {
+        return names[symbol];
+    }
+
+    public static boolean isKeyword(int symbol) {
+        return symbol >= 0 && symbol < KEYWORDS.length;
+    }
+
+    /**
+     * Looks up the characters without locking, where {@code hash} is the same
+     * as {@link String#hashCode()} for them. A concurrent {@link #add} may not
+     * be visible yet, in which case this returns {@link #NONE} and the caller
+     * retries under the lock.
+     */
+    private static int find(CharSequence chars, int start, int end, int hash) {
+        String[] names = Symbols.names;
+        int[] table = Symbols.table;
+        int mask = table.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (id < 0) {
+                return NONE;
+            } else if (id < names.length && names[id] != null && matches(names[id], chars, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    private static synchronized int add(CharSequence chars, int start, int end, int hash) {
+        int symbol = find(chars, start, end, hash);
+        if (symbol != NONE) {
+            return symbol;
+        }
+        String name = chars.subSequence(start, end).toString();
+        String[] current = names;
+        if (size == current.length) {
+            String[] grown = new String[current.length * 2];
+            System.arraycopy(current, 0, grown, 0, size);
+            current = grown;
+        }
+        current[size] = name;
+        names = current;
+        int id = size++;
+        if (2 * size > table.length) {
+            rehash();
+        }
+        insert(table, hash, id);
+        return id;
+    }
+
+    private static boolean matches(String name, CharSequence chars, int start, int end) {
+        if (name == chars && start == 0 && end == name.length()) {
+            return true;
+        } else if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != chars.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void rehash() {
+        int[] grown = new int[table.length * 2];
+        for (int id = 0; id < size - 1; id++) {
+            insert(grown, names[id].hashCode(), id);
+        }
+        table = grown;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static void insert(int[] table, int hash, int id) {
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+    }
+
+}
@@ -1,5 +1,8 @@
 package plc.project;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
 public final class Token {
 
     public enum Type {
@@ -11,21 +14,127 @@ public final class Token {
         OPERATOR
     }
 
+    /**
+     * The binary operators, which the lexer identifies as it scans them so the
+     * parser does not compare operator literals. Other operator tokens, such
+     * as {@code =} and {@code ;}, have no operator.
+     */
+    public enum Operator {
+        AND("&&"),
+        OR("||"),
+        EQUAL("=="),
+        NOT_EQUAL("!="),
+        LESS("<"),
+        LESS_EQUAL("<="),
+        GREATER(">"),
+        GREATER_EQUAL(">="),
+        ADD("+"),
+        SUBTRACT("-"),
+        MULTIPLY("*"),
+        DIVIDE("/");
+
+        private static final Operator[] VALUES = values();
+
+        private final String literal;
+
+        Operator(String literal) {
+            this.literal = literal;
+        }
+
+        public String getLiteral() {
+            return literal;
+        }
+
+        /**
+         * Returns the operator with the given literal, or {@code null} if
+         * there is none.
+         */
+        public static Operator of(CharSequence literal) {
+            for (Operator operator : VALUES) {
+                if (operator.literal.contentEquals(literal)) {
+                    return operator;
+                }
+            }
+            return null;
+        }
+
+    }
+
     private final Type type;
-    private final String literal;
+    private final CharSequence literal;
     private final int index;
+    private final int symbol;
+    private final Number value;
+    private final Operator operator;
 
     public Token(Type type, String literal, int index) {
+        this(type, literal, index, type == Type.IDENTIFIER ? Symbols.intern(literal) : Symbols.NONE);
+    }
+
+    /**
+     * Creates a token with an already interned symbol, which must be {@link
+     * Symbols#NONE} unless the token is an identifier.
+     */
+    public Token(Type type, String literal, int index, int symbol) {
+        this(type, literal, index, symbol, parseValue(type, literal));
+    }
+
+    /**
+     * Creates a token with an already parsed value, as returned by {@link
+     * #getValue()}. The literal may be a {@link SourceView} rather than a
+     * copy of the characters.
+     */
+    public Token(Type type, CharSequence literal, int index, int symbol, Number value) {
+        this(type, literal, index, symbol, value, type == Type.OPERATOR ? Operator.of(literal) : null);
+    }
+
+    /**
+     * Creates a token with an already identified operator, as returned by
+     * {@link #getOperator()}, as the lexer does.
+     */
+    public Token(Type type, CharSequence literal, int index, int symbol, Number value, Operator operator) {
         this.type = type;
         this.literal = literal;
         this.index = index;
+        this.symbol = symbol;
+        this.value = value;
+        this.operator = operator;
+    }
+
+    /**
+     * Parses the value of a number literal, or returns {@code null} for other
+     * types of tokens or a literal which is not a valid number.
+     */
+    static Number parseValue(Type type, CharSequence literal) {
+        try {
+            if (type == Type.INTEGER) {
+                return new BigInteger(literal.toString());
+            } else if (type == Type.DECIMAL) {
+                return new BigDecimal(literal.toString());
+            }
+        } catch (NumberFormatException e) {
+            // Only tokens created by hand can have invalid literals
+        }
+        return null;
     }
 
     public Type getType() {
         return type;
     }
 
+    /**
+     * Returns the literal as a {@link String}, which copies the characters if
+     * the token holds a view of the source.
+     */
     public String getLiteral() {
+        return literal.toString();
+    }
+
+    /**
+     * Returns the literal without copying it, which may be a {@link
+     * SourceView}.
+     */
+    public CharSequence getLiteralView() {
         return literal;
     }
 
@@ -33,14 +142,52 @@ public final class Token {
         return index;
     }
 
+    /**
+     * Returns the id of this identifier in {@link Symbols}, or {@link
+     * Symbols#NONE} for other tokens.
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Returns the binary operator of an {@link Type#OPERATOR} token, or {@code
+     * null} if it is not one.
+     */
+    public Operator getOperator() {
+        return operator;
+    }
+
+    /**
+     * Returns the value of an {@link Type#INTEGER} token as a {@link
+     * BigInteger} or a {@link Type#DECIMAL} token as a {@link BigDecimal}, or
+     * {@code null} for other tokens.
+     */
+    public Number getValue() {
+        return value;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
                 && type == ((Token) obj).type
-                && literal.equals(((Token) obj).literal)
+                && CharSequence.compare(literal, ((Token) obj).literal) == 0
                 && index == ((Token) obj).index;
     }
 
+    /**
+     * Hashes the characters of the literal as {@link String#hashCode()} does,
+     * so tokens with a view and a string literal have the same hash code.
+     */
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < literal.length(); i++) {
+            hash = 31 * hash + literal.charAt(i);
+        }
+        return 31 * (31 * type.hashCode() + hash) + index;
+    }
+
     @Override
     public String toString() {
         return type + "=" + literal + "@" + index;
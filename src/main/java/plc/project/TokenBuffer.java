@@ -0,0 +1,348 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact sequence of tokens, storing the type, start index, and length of
+ * each token in primitive arrays instead of as {@link Token} objects, along
+ * with the {@link Symbols} id of identifiers and the {@link Token.Operator}
+ * of operators.
+ *
+ * When the buffer is built over the source (as by {@link Lexer#lexBuffer()}),
+ * literals are only copied when requested through {@link #getLiteral(int)},
+ * {@link #getLiteralView(int)} returns a {@link SourceView} instead, and
+ * {@link #matches(int, String)} compares against the source directly.
+ * Identifier literals are the canonical names from {@link Symbols}. A
+ * buffer built from existing tokens with {@link #of(List)} keeps their
+ * literals instead.
+ *
+ * Number values over the source are stored as primitives: the value of an
+ * integer, or the unscaled value and scale of a decimal packed by {@link
+ * #pack(long, int)}. Values which do not fit are kept as objects, as are
+ * the values of a buffer built with {@link #of(List)}.
+ */
+public final class TokenBuffer {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+    private static final Token.Operator[] OPERATORS = Token.Operator.values();
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final String source;
+    private final CharSequence[] literals;
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] symbols;
+    private byte[] operators; // the ordinal of the operator plus one, or zero
+    private long[] values; // allocated with the first number
+    private Number[] objects; // allocated with the first value which is not in values
+    private int size = 0;
+
+    public TokenBuffer(String source) {
+        this(source, null, INITIAL_CAPACITY);
+    }
+
+    TokenBuffer(String source, int capacity) {
+        this(source, null, Math.max(capacity, 1));
+    }
+
+    private TokenBuffer(String source, CharSequence[] literals, int capacity) {
+        this.source = source;
+        this.literals = literals;
+        this.types = new byte[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.symbols = new int[capacity];
+        this.operators = new byte[capacity];
+    }
+
+    /**
+     * Creates a buffer holding the given tokens, keeping their literals.
+     */
+    public static TokenBuffer of(List<Token> tokens) {
+        TokenBuffer buffer = new TokenBuffer(null, new CharSequence[tokens.size()], Math.max(tokens.size(), 1));
+        for (Token token : tokens) {
+            buffer.literals[buffer.size] = token.getLiteralView();
+            buffer.append(token.getType(), token.getIndex(), token.getLiteralView().length(), token.getSymbol());
+            buffer.setOperator(buffer.size - 1, token.getOperator());
+            if (token.getValue() != null) {
+                buffer.objects()[buffer.size - 1] = token.getValue();
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Appends a token spanning {@code length} characters of the source from
+     * {@code start}, with the given symbol as in {@link Token#getSymbol()}.
+     */
+    public void add(Token.Type type, int start, int length, int symbol) {
+        if (source == null) {
+            throw new IllegalStateException("Tokens can only be added to a buffer over the source.");
+        }
+        Number value = Token.parseValue(type, new SourceView(source, start, length));
+        if (value == null && (type == Token.Type.INTEGER || type == Token.Type.DECIMAL)) {
+            throw new IllegalArgumentException("Invalid number literal " + source.substring(start, start + length) + ".");
+        }
+        append(type, start, length, symbol);
+        if (value != null) {
+            setValue(size - 1, value);
+        } else if (type == Token.Type.OPERATOR) {
+            setOperator(size - 1, Token.Operator.of(new SourceView(source, start, length)));
+        }
+    }
+
+    /**
+     * Appends an operator token which the lexer has already identified as the
+     * given binary operator, or {@code null} if it is not one.
+     */
+    public void addOperator(int start, int length, Token.Operator operator) {
+        if (source == null) {
+            throw new IllegalStateException("Tokens can only be added to a buffer over the source.");
+        }
+        append(Token.Type.OPERATOR, start, length, Symbols.NONE);
+        setOperator(size - 1, operator);
+    }
+
+    /**
+     * Appends a number token with an already parsed value, which is {@code
+     * unscaled} divided by ten to the power of {@code scale}. The scale is
+     * zero for an {@link Token.Type#INTEGER}.
+     */
+    public void addNumber(Token.Type type, int start, int length, long unscaled, int scale) {
+        if (source == null) {
+            throw new IllegalStateException("Tokens can only be added to a buffer over the source.");
+        }
+        append(type, start, length, Symbols.NONE);
+        if (type == Token.Type.INTEGER) {
+            values()[size - 1] = unscaled;
+        } else if (fits(unscaled, scale)) {
+            values()[size - 1] = pack(unscaled, scale);
+        } else {
+            setValue(size - 1, BigDecimal.valueOf(unscaled, scale));
+        }
+    }
+
+    /**
+     * Appends the tokens of {@code buffer} from {@code begin} (inclusive) to
+     * {@code end} (exclusive), shifting their indices by {@code shift}. Used
+     * by {@link Lexer#relex} to keep the tokens after an edit.
+     */
+    void addAll(TokenBuffer buffer, int begin, int end, int shift) {
+        int count = end - begin;
+        ensureCapacity(size + count);
+        System.arraycopy(buffer.types, begin, types, size, count);
+        System.arraycopy(buffer.lengths, begin, lengths, size, count);
+        System.arraycopy(buffer.symbols, begin, symbols, size, count);
+        System.arraycopy(buffer.operators, begin, operators, size, count);
+        if (buffer.values != null) {
+            System.arraycopy(buffer.values, begin, values(), size, count);
+        }
+        if (buffer.objects != null) {
+            System.arraycopy(buffer.objects, begin, objects(), size, count);
+        }
+        for (int i = 0; i < count; i++) {
+            starts[size + i] = buffer.starts[begin + i] + shift;
+        }
+        size += count;
+    }
+
+    private void append(Token.Type type, int start, int length, int symbol) {
+        ensureCapacity(size + 1);
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        symbols[size] = symbol;
+        operators[size] = 0;
+        size++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > types.length) {
+            capacity = Math.max(capacity, types.length * 2);
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            symbols = Arrays.copyOf(symbols, capacity);
+            operators = Arrays.copyOf(operators, capacity);
+            if (values != null) {
+                values = Arrays.copyOf(values, capacity);
+            }
+            if (objects != null) {
+                objects = Arrays.copyOf(objects, capacity);
+            }
+        }
+    }
+
+    private long[] values() {
+        if (values == null) {
+            values = new long[types.length];
+        }
+        return values;
+    }
+
+    private Number[] objects() {
+        if (objects == null) {
+            objects = new Number[types.length];
+        }
+        return objects;
+    }
+
+    private void setOperator(int i, Token.Operator operator) {
+        operators[i] = (byte) (operator == null ? 0 : operator.ordinal() + 1);
+    }
+
+    private void setValue(int i, Number value) {
+        if (value instanceof BigInteger && ((BigInteger) value).bitLength() < Long.SIZE) {
+            values()[i] = value.longValue();
+        } else if (value instanceof BigDecimal && ((BigDecimal) value).unscaledValue().bitLength() < Long.SIZE
+                && fits(((BigDecimal) value).unscaledValue().longValue(), ((BigDecimal) value).scale())) {
+            values()[i] = pack(((BigDecimal) value).unscaledValue().longValue(), ((BigDecimal) value).scale());
+        } else {
+            objects()[i] = value;
+        }
+    }
+
+    /**
+     * Returns true if the unscaled value and scale of a decimal can be packed
+     * into a long, with the scale in the low byte.
+     */
+    private static boolean fits(long unscaled, int scale) {
+        return scale >= 0 && scale <= 0xFF && (unscaled << 8) >> 8 == unscaled;
+    }
+
+    private static long pack(long unscaled, int scale) {
+        return unscaled << 8 | scale;
+    }
+
+    /**
+     * Returns the source the tokens were lexed from, or {@code null} if the
+     * buffer was built with {@link #of(List)}.
+     */
+    String source() {
+        return source;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Token.Type getType(int i) {
+        return TYPES[types[check(i)]];
+    }
+
+    /**
+     * Returns the index of the token in the source, as {@link Token#getIndex()}.
+     */
+    public int getIndex(int i) {
+        return starts[check(i)];
+    }
+
+    public int getLength(int i) {
+        return lengths[check(i)];
+    }
+
+    public int getSymbol(int i) {
+        return symbols[check(i)];
+    }
+
+    /**
+     * Returns the binary operator of the token as {@link
+     * Token#getOperator()}, or {@code null} if it is not one.
+     */
+    public Token.Operator getOperator(int i) {
+        int operator = operators[check(i)];
+        return operator == 0 ? null : OPERATORS[operator - 1];
+    }
+
+    /**
+     * Returns the literal of the token, creating it from the source if
+     * necessary.
+     */
+    public String getLiteral(int i) {
+        return getLiteralView(i).toString();
+    }
+
+    /**
+     * Returns the literal of the token without copying it, as a {@link
+     * SourceView} unless the buffer holds literals or the token is an
+     * identifier.
+     */
+    public CharSequence getLiteralView(int i) {
+        check(i);
+        if (literals != null) {
+            return literals[i];
+        } else if (symbols[i] != Symbols.NONE) {
+            return Symbols.getName(symbols[i]);
+        }
+        return new SourceView(source, starts[i], lengths[i]);
+    }
+
+    /**
+     * Returns the value of the number token as {@link Token#getValue()}, or
+     * {@code null} for other tokens.
+     */
+    public Number getValue(int i) {
+        Token.Type type = getType(i);
+        if (type != Token.Type.INTEGER && type != Token.Type.DECIMAL) {
+            return null;
+        } else if (literals != null || (objects != null && objects[i] != null)) {
+            return objects != null ? objects[i] : null;
+        } else if (type == Token.Type.INTEGER) {
+            return BigInteger.valueOf(values[i]);
+        }
+        return BigDecimal.valueOf(values[i] >> 8, (int) (values[i] & 0xFF));
+    }
+
+    /**
+     * Returns true if the literal of the token equals {@code literal}, without
+     * creating the literal.
+     */
+    public boolean matches(int i, String literal) {
+        check(i);
+        if (literals != null) {
+            return literal.contentEquals(literals[i]);
+        }
+        return lengths[i] == literal.length()
+                && source.regionMatches(starts[i], literal, 0, lengths[i]);
+    }
+
+    /**
+     * Creates the {@link Token} at the given position.
+     */
+    public Token get(int i) {
+        return new Token(getType(i), getLiteralView(i), getIndex(i), getSymbol(i), getValue(i), getOperator(i));
+    }
+
+    /**
+     * Returns a list view of this buffer, which creates tokens as they are
+     * accessed.
+     */
+    public List<Token> asList() {
+        return new AbstractList<>() {
+
+            @Override
+            public Token get(int index) {
+                return TokenBuffer.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+        };
+    }
+
+    private int check(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + size);
+        }
+        return i;
+    }
+
+}
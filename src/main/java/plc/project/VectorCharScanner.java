@@ -0,0 +1,62 @@
+package plc.project;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@link CharScanner} classifying a whole vector of characters per step with
+ * {@code jdk.incubator.vector}, using the preferred species of the platform
+ * (16 characters with 256 bit vectors, 32 with 512 bits). This class must only
+ * be loaded when the module is available, which {@link CharScanner#INSTANCE}
+ * checks.
+ *
+ * Most runs are only a few characters long, so the first few characters are
+ * checked one at a time before switching to vectors.
+ */
+final class VectorCharScanner extends CharScanner {
+
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final int SCALAR_PREFIX = 8;
+
+    @Override
+    int skip(int kind, char[] chars, int from, int to) {
+        int i = super.skip(kind, chars, from, Math.min(from + SCALAR_PREFIX, to));
+        if (i < from + SCALAR_PREFIX) {
+            return i;
+        }
+        for (int bound = to - SPECIES.length(); i <= bound; i += SPECIES.length()) {
+            VectorMask<Short> stops = stops(kind, ShortVector.fromCharArray(SPECIES, chars, i));
+            if (stops.anyTrue()) {
+                return i + stops.firstTrue();
+            }
+        }
+        return super.skip(kind, chars, i, to);
+    }
+
+    @Override
+    boolean isVectorized() {
+        return true;
+    }
+
+    /**
+     * Returns the lanes which are not of the given kind, matching {@link
+     * CharScanner#matches(int, char)}.
+     */
+    private static VectorMask<Short> stops(int kind, ShortVector chars) {
+        switch (kind) {
+            case WHITESPACE:
+                return chars.eq((short) ' ').or(chars.eq((short) '\n')).or(chars.eq((short) '\t'))
+                        .or(chars.eq((short) '\r')).or(chars.eq((short) '\b')).not();
+            case IDENTIFIER:
+                ShortVector lower = chars.or((short) 0x20); // folds 'A'-'Z' onto 'a'-'z'
+                return lower.compare(VectorOperators.GE, (short) 'a').and(lower.compare(VectorOperators.LE, (short) 'z'))
+                        .or(chars.compare(VectorOperators.GE, (short) '0').and(chars.compare(VectorOperators.LE, (short) '9')))
+                        .or(chars.eq((short) '_')).or(chars.eq((short) '-')).not();
+            default:
+                return chars.eq((short) '"').or(chars.eq((short) '\\')).or(chars.eq((short) '\n'));
+        }
+    }
+
+}
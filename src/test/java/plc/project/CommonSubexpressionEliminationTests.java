@@ -0,0 +1,88 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class CommonSubexpressionEliminationTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testEliminate(String test, String input, String expected) {
+        Ast.Source source = analyze(input);
+        Assertions.assertEquals(analyze(expected), eliminate(source));
+    }
+
+    private static Stream<Arguments> testEliminate() {
+        return Stream.of(
+                Arguments.of("Across Statements",
+                        "DEF main(): Integer DO LET x = 2; LET y = 3; LET a = x * y + 1; LET b = x * y + 2; RETURN a + b; END",
+                        "DEF main(): Integer DO LET x = 2; LET y = 3; LET cse_1 = x * y; LET a = cse_1 + 1; LET b = cse_1 + 2; RETURN a + b; END"),
+                Arguments.of("Within Statement",
+                        "DEF main(): Integer DO LET x = 2; LET y = 3; RETURN (x + y) * (x + y); END",
+                        "DEF main(): Integer DO LET x = 2; LET y = 3; LET cse_1 = x + y; RETURN cse_1 * cse_1; END"),
+                Arguments.of("Largest First",
+                        "DEF main(): Integer DO LET x = 2; LET a = x * x - 1; LET b = x * x - 1; RETURN a * b; END",
+                        "DEF main(): Integer DO LET x = 2; LET cse_1 = x * x - 1; LET a = cse_1; LET b = cse_1; RETURN a * b; END"),
+                Arguments.of("Field Access",
+                        "DEF main(): Integer DO LET s = \"ab\"; LET a = s.length; LET b = s.length; RETURN a + b; END",
+                        "DEF main(): Integer DO LET s = \"ab\"; LET cse_1 = s.length; LET a = cse_1; LET b = cse_1; RETURN a + b; END"),
+                Arguments.of("Call Arguments",
+                        "DEF main(): Integer DO LET x = 2; IF x < 3 DO print(x * x + x * x); END RETURN 0; END",
+                        "DEF main(): Integer DO LET x = 2; IF x < 3 DO LET cse_1 = x * x; print(cse_1 + cse_1); END RETURN 0; END"),
+                Arguments.of("Local Across Call",
+                        "DEF main(): Integer DO LET x = 2; LET a = x * x; print(a); RETURN x * x; END",
+                        "DEF main(): Integer DO LET x = 2; LET cse_1 = x * x; LET a = cse_1; print(a); RETURN cse_1; END"),
+                Arguments.of("Fresh Name",
+                        "DEF main(): Integer DO LET cse_1 = 2; RETURN cse_1 * 3 + cse_1 * 3; END",
+                        "DEF main(): Integer DO LET cse_1 = 2; LET cse_2 = cse_1 * 3; RETURN cse_2 + cse_2; END")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testNotEliminated(String test, String input) {
+        Ast.Source source = analyze(input);
+        Assertions.assertSame(source, eliminate(source));
+    }
+
+    private static Stream<Arguments> testNotEliminated() {
+        return Stream.of(
+                Arguments.of("Single Use", "DEF main(): Integer DO LET x = 2; LET a = x * x; RETURN a; END"),
+                Arguments.of("Assigned", "DEF main(): Integer DO LET x = 1; LET a = x + 1; x = 2; LET b = x + 1; RETURN a + b; END"),
+                Arguments.of("Field After Call", "DEF main(): Integer DO LET s = \"ab\"; LET a = s.length; print(a); LET b = s.length; RETURN a + b; END"),
+                Arguments.of("Conditional", "DEF main(): Integer DO LET x = 1; LET a = x < 1 || x + 1 > 2; LET b = x + 1; IF a DO RETURN b; END RETURN 0; END"),
+                Arguments.of("Calls", "DEF f(): Integer DO RETURN 1; END DEF main(): Integer DO RETURN f() + 1 + (f() + 1); END"),
+                Arguments.of("For Body", "DEF main(): Integer DO LET i = 0; FOR (i = 0; i < 2; i = i + 1) LET a = i * i; print(a + i * i); END RETURN 0; END")
+        );
+    }
+
+    @Test
+    void testInterpreted() {
+        Ast.Source source = analyze("DEF f(n: Integer): Integer DO LET a = n * 2 + 1; print(n * 2 + 1); RETURN a + (n * 2 + 1); END " +
+                "DEF main(): Integer DO LET total = 0; LET i = 0; WHILE i < 3 DO total = total + f(i) * f(i); i = i + 1; END RETURN total; END");
+        PassManager.Result result = new PassManager(List.of(new CommonSubexpressionElimination())).run(source);
+        Assertions.assertNotSame(source, result.getSource());
+        Assertions.assertEquals(3, result.getReports().get(0).getChanges());
+        Assertions.assertEquals(new Interpreter(new Scope(null)).visit(source).getValue(),
+                new Interpreter(new Scope(null)).visit(result.getSource()).getValue());
+        Assertions.assertEquals(BigInteger.valueOf(140), new Interpreter(new Scope(null)).visit(result.getSource()).getValue());
+    }
+
+    private static Ast.Source analyze(String input) {
+        Ast.Source source = new Parser(new Lexer(input).lexBuffer()).parseSource();
+        new Analyzer(new Scope(null)).visit(source);
+        return source;
+    }
+
+    private static Ast.Source eliminate(Ast.Source source) {
+        return new PassManager(List.of(new CommonSubexpressionElimination())).run(source).getSource();
+    }
+
+}
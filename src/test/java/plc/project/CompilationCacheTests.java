@@ -0,0 +1,144 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+final class CompilationCacheTests {
+
+    private static final String SOURCE = "DEF main(): Integer DO print(\"Hello, World!\"); RETURN 0; END";
+
+    @Test
+    void testHit() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        try {
+            CompilationCache cache = new CompilationCache(directory, 1 << 20);
+            CompilationCache.Result compiled = cache.compile(SOURCE);
+            CompilationCache.Result cached = new CompilationCache(directory, 1 << 20).compile(SOURCE);
+            Assertions.assertEquals(compiled.getCode(), cached.getCode());
+            Assertions.assertEquals(compiled.getSource(), cached.getSource());
+            Assertions.assertEquals(0, cache.getHits());
+            Assertions.assertEquals(1, cache.getMisses());
+            cache.compile(SOURCE);
+            Assertions.assertEquals(1, cache.getHits());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void testEviction() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        try {
+            CompilationCache cache = new CompilationCache(directory, 1 << 20);
+            cache.compile(SOURCE);
+            long size = cache.getSize();
+            cache = new CompilationCache(directory, 2 * size + size / 2);
+            cache.compile(SOURCE.replace("Hello", "Hi"));
+            cache.compile(SOURCE); // the least recently used is now the second source
+            cache.compile(SOURCE.replace("Hello", "Hey"));
+            Assertions.assertTrue(cache.getSize() <= 2 * size + size / 2);
+            cache.compile(SOURCE);
+            cache.compile(SOURCE.replace("Hello", "Hi"));
+            Assertions.assertEquals(2, cache.getHits());
+            Assertions.assertEquals(3, cache.getMisses());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void testCorruptEntry() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        try {
+            new CompilationCache(directory, 1 << 20).compile(SOURCE);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    Files.write(path, new byte[] {0, 0, 0, 1});
+                }
+            }
+            CompilationCache cache = new CompilationCache(directory, 1 << 20);
+            Assertions.assertTrue(cache.compile(SOURCE).getCode().contains("Hello, World!"));
+            Assertions.assertEquals(0, cache.getHits());
+            cache.compile(SOURCE);
+            Assertions.assertEquals(1, cache.getHits());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void testCorruptBytes() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        try {
+            CompilationCache.Result compiled = new CompilationCache(directory, 1 << 20).compile(SOURCE);
+            Path entry;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                entry = stream.iterator().next();
+            }
+            byte[] bytes = Files.readAllBytes(entry);
+            for (int i = 0; i <= bytes.length - 4; i++) {
+                for (int value : new int[] {-1, bytes.length}) {
+                    Files.write(entry, ByteBuffer.wrap(bytes.clone()).putInt(i, value).array());
+                    CompilationCache.Result cached = new CompilationCache(directory, 1 << 20).compile(SOURCE);
+                    Assertions.assertEquals(compiled.getCode(), cached.getCode());
+                    Assertions.assertEquals(compiled.getSource(), cached.getSource());
+                }
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void testException() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        try {
+            CompilationCache cache = new CompilationCache(directory, 1 << 20);
+            Assertions.assertThrows(ParseException.class, () -> cache.compile("DEF main() DO"));
+            Assertions.assertEquals(0, cache.getSize());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void testTemporaryFiles() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        try {
+            Path stale = Files.createFile(directory.resolve("stale.tmp"));
+            Files.setLastModifiedTime(stale, FileTime.fromMillis(System.currentTimeMillis() - 2 * 60 * 60 * 1000));
+            Path writing = Files.createFile(directory.resolve("writing.tmp")); // by another instance
+            new CompilationCache(directory, 1 << 20);
+            Assertions.assertFalse(Files.exists(stale));
+            Assertions.assertTrue(Files.exists(writing));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void testStoreFailure() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        CompilationCache cache = new CompilationCache(directory, 1 << 20);
+        delete(directory);
+        Assertions.assertTrue(cache.compile(SOURCE).getCode().contains("Hello, World!"));
+        Assertions.assertEquals(0, cache.getSize());
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+}
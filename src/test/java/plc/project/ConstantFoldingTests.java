@@ -0,0 +1,142 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class ConstantFoldingTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testFold(String test, String type, String expression, Object expected) {
+        Ast.Source source = analyze("DEF main(): Integer DO LET x: " + type + " = " + expression + "; RETURN 0; END");
+        Ast.Source folded = fold(source);
+        Ast.Expression value = ((Ast.Statement.Declaration) folded.getMethods().get(0).getStatements().get(0)).getValue().get();
+        if (expected != null) {
+            Assertions.assertEquals(new Ast.Expression.Literal(expected), strip(value));
+        } else {
+            Assertions.assertSame(source, folded);
+        }
+    }
+
+    private static Stream<Arguments> testFold() {
+        return Stream.of(
+                Arguments.of("Integer", "Integer", "60 * 60 * 24", BigInteger.valueOf(86400)),
+                Arguments.of("Division", "Integer", "0 - 7 / 2", BigInteger.valueOf(-3)),
+                Arguments.of("Group", "Integer", "(1 + 2) * (10 - 4)", BigInteger.valueOf(18)),
+                Arguments.of("Comparison", "Boolean", "1 < 2 && 'a' != 'b'", true),
+                Arguments.of("Concatenation", "String", "\"a\" + 1 + TRUE", "a1true"),
+                Arguments.of("Decimal Division", "Decimal", "3.0 / 2.0", new BigDecimal("1.5")),
+                Arguments.of("Inexact Division", "Decimal", "1.0 / 3.0", null),
+                Arguments.of("Division By Zero", "Integer", "1 / 0", null),
+                Arguments.of("Overflow", "Integer", "2147483647 + 1", null),
+                Arguments.of("Decimal Concatenation", "String", "\"a\" + 1.5", null),
+                Arguments.of("Quote Concatenation", "String", "\"x\" + '\"'", null)
+        );
+    }
+
+    @Test
+    void testPartial() {
+        Ast.Source source = analyze("DEF f(a: Integer): Integer DO RETURN a + (2 * 3) * (a - 4 / 2); END DEF main(): Integer DO RETURN f(1); END");
+        Ast.Source folded = fold(source);
+        Assertions.assertEquals(
+                new Parser(new Lexer("DEF f(a: Integer): Integer DO RETURN a + 6 * (a - 2); END").lexBuffer()).parseSource().getMethods().get(0).getStatements(),
+                strip(folded).getMethods().get(0).getStatements());
+        Assertions.assertEquals(new Interpreter(new Scope(null)).visit(source).getValue(),
+                new Interpreter(new Scope(null)).visit(folded).getValue());
+    }
+
+    @Test
+    void testGenerated() {
+        Ast.Source folded = fold(analyze("DEF main(): Integer DO print(\"a\" + 'b'); print(\"x\" + '\"'); RETURN 0; END"));
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(folded);
+        Assertions.assertTrue(writer.toString().contains("System.out.println(\"ab\");"), writer.toString());
+        Assertions.assertTrue(writer.toString().contains("System.out.println(\"x\" + '\"');"), writer.toString());
+    }
+
+    @Test
+    void testConstantField() {
+        Ast.Source source = new Parser(new Lexer("LET CONST limit: Integer = 4 * 25; " +
+                "DEF f(limit: Integer): Integer DO RETURN limit; END " +
+                "DEF main(): Integer DO print(limit); LET limit: Integer = 1; RETURN limit; END").lexBuffer()).parseSource();
+        source.getFields().get(0).setVariable(new Environment.Variable("limit", "limit", Environment.Type.INTEGER, true, Environment.NIL));
+        new Analyzer(new Scope(null)).visit(source);
+        Ast.Source folded = fold(source);
+        Assertions.assertEquals(new Ast.Expression.Literal(BigInteger.valueOf(100)), strip(folded.getFields().get(0).getValue().get()));
+        Assertions.assertSame(source.getMethods().get(0), folded.getMethods().get(0));
+        List<Ast.Statement> statements = folded.getMethods().get(1).getStatements();
+        Assertions.assertEquals(new Ast.Expression.Literal(BigInteger.valueOf(100)),
+                strip(((Ast.Expression.Function) ((Ast.Statement.Expression) statements.get(0)).getExpression()).getArguments().get(0)));
+        Assertions.assertTrue(((Ast.Statement.Return) statements.get(2)).getValue() instanceof Ast.Expression.Access);
+    }
+
+    @Test
+    void testDeepNesting() {
+        int depth = 100_000;
+        Ast.Source source = analyze("DEF main(): Integer DO RETURN 0" + " + 1".repeat(depth) + "; END");
+        Ast.Source folded = fold(source);
+        Assertions.assertEquals(new Ast.Expression.Literal(BigInteger.valueOf(depth)),
+                strip(((Ast.Statement.Return) folded.getMethods().get(0).getStatements().get(0)).getValue()));
+    }
+
+    private static Ast.Source analyze(String input) {
+        Ast.Source source = new Parser(new Lexer(input).lexBuffer()).parseSource();
+        new Analyzer(new Scope(null)).visit(source);
+        return source;
+    }
+
+    private static Ast.Source fold(Ast.Source source) {
+        return new PassManager(List.of(new ConstantFolding())).run(source).getSource();
+    }
+
+    /**
+     * Returns an unanalyzed copy of the AST, to compare with parsed ASTs.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Ast> T strip(T ast) {
+        return (T) new Pass() {
+
+            @Override
+            public String getName() {
+                return "strip";
+            }
+
+            @Override
+            public Ast visit(Ast.Expression.Literal ast) {
+                return new Ast.Expression.Literal(ast.getLiteral());
+            }
+
+            @Override
+            public Ast visit(Ast.Expression.Access ast) {
+                return new Ast.Expression.Access(visitOptional(ast.getReceiver()), ast.getName());
+            }
+
+            @Override
+            public Ast visit(Ast.Expression.Function ast) {
+                return new Ast.Expression.Function(visitOptional(ast.getReceiver()), ast.getName(), visitExpressions(ast.getArguments()));
+            }
+
+            @Override
+            protected Ast.Expression rewrite(Ast.Expression.Group ast, Ast.Expression expression) {
+                return new Ast.Expression.Group(expression);
+            }
+
+            @Override
+            protected Ast.Expression rewrite(Ast.Expression.Binary ast, Ast.Expression left, Ast.Expression right) {
+                return new Ast.Expression.Binary(ast.getOperator(), left, right);
+            }
+
+        }.visit(ast);
+    }
+
+}
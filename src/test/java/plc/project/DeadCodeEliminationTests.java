@@ -0,0 +1,86 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+final class DeadCodeEliminationTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testEliminate(String test, String input, String expected) {
+        Ast.Source source = eliminate(analyze(input));
+        Assertions.assertEquals(analyze(expected), source);
+    }
+
+    private static Stream<Arguments> testEliminate() {
+        return Stream.of(
+                Arguments.of("After Return",
+                        "DEF main(): Integer DO print(1); RETURN 0; print(2); END",
+                        "DEF main(): Integer DO print(1); RETURN 0; END"),
+                Arguments.of("After Branches Which Return",
+                        "DEF f(a: Boolean): Integer DO IF a DO RETURN 1; ELSE RETURN 2; END print(3); RETURN 3; END DEF main(): Integer DO RETURN f(TRUE); END",
+                        "DEF f(a: Boolean): Integer DO IF a DO RETURN 1; ELSE RETURN 2; END END DEF main(): Integer DO RETURN f(TRUE); END"),
+                Arguments.of("True Branch",
+                        "DEF main(): Integer DO IF TRUE DO print(1); ELSE print(2); END RETURN 0; END",
+                        "DEF main(): Integer DO print(1); RETURN 0; END"),
+                Arguments.of("False Branch",
+                        "DEF main(): Integer DO IF FALSE DO print(1); END RETURN 0; END",
+                        "DEF main(): Integer DO RETURN 0; END"),
+                Arguments.of("Branch Declaring",
+                        "DEF main(): Integer DO IF FALSE DO print(1); ELSE LET x = 2; print(x); END RETURN 0; END",
+                        "DEF main(): Integer DO IF TRUE DO LET x = 2; print(x); END RETURN 0; END"),
+                Arguments.of("False Loop",
+                        "DEF main(): Integer DO WHILE FALSE DO print(1); END RETURN 0; END",
+                        "DEF main(): Integer DO RETURN 0; END"),
+                Arguments.of("Unused Declarations",
+                        "DEF main(): Integer DO LET x = 1; LET y = x != 2 && TRUE; LET z: Integer; LET used = 2; RETURN used; END",
+                        "DEF main(): Integer DO LET used = 2; RETURN used; END"),
+                Arguments.of("Unused Declaration With Side Effects",
+                        "DEF f(): Integer DO print(1); RETURN 1; END DEF main(): Integer DO LET x = f(); LET y = 1 / 0; RETURN 0; END",
+                        "DEF f(): Integer DO print(1); RETURN 1; END DEF main(): Integer DO LET x = f(); LET y = 1 / 0; RETURN 0; END"),
+                Arguments.of("Empty Branch",
+                        "DEF main(): Integer DO LET a = TRUE; IF a DO LET x = 1; END RETURN 0; END",
+                        "DEF main(): Integer DO RETURN 0; END"),
+                Arguments.of("Unreachable Methods",
+                        "DEF g(): Integer DO RETURN 1; END DEF unused(): Integer DO RETURN g(); END DEF f(): Integer DO RETURN g(); END DEF main(): Integer DO RETURN f(); END",
+                        "DEF g(): Integer DO RETURN 1; END DEF f(): Integer DO RETURN g(); END DEF main(): Integer DO RETURN f(); END")
+        );
+    }
+
+    @Test
+    void testUnchanged() {
+        Ast.Source source = analyze("DEF main(): Integer DO LET x = 1; WHILE x < 3 DO x = x + 1; END RETURN x; END");
+        PassManager.Result result = new PassManager(List.of(new DeadCodeElimination())).run(source);
+        Assertions.assertSame(source, result.getSource());
+        Assertions.assertEquals(0, result.getReports().get(0).getChanges());
+    }
+
+    @Test
+    void testAfterFolding() {
+        Ast.Source source = analyze("DEF main(): Integer DO IF 1 < 2 DO RETURN 1; END RETURN 2; END");
+        PassManager.Result result = new PassManager(List.of(new ConstantFolding(), new DeadCodeElimination())).run(source);
+        Assertions.assertEquals(analyze("DEF main(): Integer DO RETURN 1; END"), result.getSource());
+        Assertions.assertEquals(2, result.getReports().get(1).getChanges());
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lexBuffer()).parseSource();
+    }
+
+    private static Ast.Source analyze(String input) {
+        Ast.Source source = parse(input);
+        new Analyzer(new Scope(null)).visit(source);
+        return source;
+    }
+
+    private static Ast.Source eliminate(Ast.Source source) {
+        return new PassManager(List.of(new DeadCodeElimination())).run(source).getSource();
+    }
+
+}
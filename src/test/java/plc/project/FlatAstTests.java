@@ -0,0 +1,150 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class FlatAstTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testRoundTrip(String test, String input) {
+        Ast.Source source = new Parser(new Lexer(input).lexBuffer()).parseSource();
+        FlatAst flat = FlatAst.of(source);
+        Assertions.assertEquals(source, flat.get(flat.getRoot()));
+    }
+
+    private static Stream<Arguments> testRoundTrip() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Fields", "LET x = 1; LET CONST y: Decimal = 2.0; LET z: String;"),
+                Arguments.of("Method", "DEF f(a: Integer, b: String): Integer DO LET c = a; RETURN c + 1; END"),
+                Arguments.of("Blocks", "DEF f() DO IF x DO WHILE y DO z = 1; END ELSE f(); END FOR (i = 0; i < 3; i = i + 1) print(i); END END"),
+                Arguments.of("Expressions", "LET x = obj.field + obj.method(1, 'c', \"s\") * (TRUE && NIL != FALSE);")
+        );
+    }
+
+    @Test
+    void testAnalyzed() {
+        Ast.Source source = new Parser(new Lexer("LET x: Integer; DEF main(): Integer DO LET y: Integer = 1 + 2; print(y); RETURN y; END").lexBuffer()).parseSource();
+        new Analyzer(new Scope(null)).visit(source);
+        FlatAst flat = FlatAst.of(source);
+        Ast.Source decoded = (Ast.Source) flat.get(flat.getRoot());
+        Assertions.assertEquals(source, decoded);
+        Assertions.assertSame(source.getMethods().get(0).getFunction(), decoded.getMethods().get(0).getFunction());
+    }
+
+    @Test
+    void testAccept() {
+        FlatAst flat = FlatAst.of(new Parser(new Lexer("DEF main() DO RETURN 1 + 2; END DEF unused() DO RETURN 3; END").lexBuffer()).parseSource());
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        Assertions.assertEquals(BigInteger.valueOf(3), flat.accept(interpreter).getValue());
+    }
+
+    @Test
+    void testNodes() {
+        FlatAst flat = FlatAst.of(new Parser(new Lexer("LET x; DEF f(a: Integer) DO RETURN a * 2; END").lexBuffer()).parseSource());
+        int source = flat.getRoot();
+        Assertions.assertEquals(FlatAst.Kind.SOURCE, flat.getKind(source));
+        Assertions.assertEquals(2, flat.getChildCount(source));
+        int field = flat.getChild(source, 0);
+        Assertions.assertEquals(FlatAst.Kind.FIELD, flat.getKind(field));
+        Assertions.assertEquals("x", flat.getName(field));
+        Assertions.assertEquals(-1, flat.getChild(field, 0));
+        int method = flat.getChild(source, 1);
+        Assertions.assertEquals("f", flat.getName(method));
+        int value = flat.getChild(flat.getChild(method, 0), 0);
+        Assertions.assertEquals(FlatAst.Kind.BINARY, flat.getKind(value));
+        Assertions.assertEquals("*", flat.getOperator(value));
+        Assertions.assertEquals("a", flat.getName(flat.getChild(value, 0)));
+        Assertions.assertEquals(BigInteger.valueOf(2), flat.getLiteral(flat.getChild(value, 1)));
+    }
+
+    @Test
+    void testDeepNesting() {
+        int depth = 200_000;
+        Ast.Expression chain = new Parser(new Lexer("1" + " + 1".repeat(depth)).lexBuffer()).parseExpression();
+        FlatAst flat = FlatAst.of(chain);
+        Assertions.assertEquals(chain, flat.get(flat.getRoot()));
+    }
+
+    @Test
+    void testSerialize() throws IOException {
+        Ast.Source source = new Parser(new Lexer("LET x: Integer; DEF main(): Integer DO LET y: Decimal = 1.5; print(\"s\"); print('c'); RETURN 1 + 2; END").lexBuffer()).parseSource();
+        new Analyzer(new Scope(null)).visit(source);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FlatAst.of(source).write(bytes);
+        FlatAst flat = FlatAst.read(ByteBuffer.wrap(bytes.toByteArray()));
+        Ast.Source read = (Ast.Source) flat.get(flat.getRoot());
+        Assertions.assertEquals(source, read);
+        Assertions.assertSame(Environment.Type.INTEGER, read.getMethods().get(0).getFunction().getReturnType());
+        Assertions.assertEquals(generate(source), generate(read));
+    }
+
+    @Test
+    void testSerializeFile() throws IOException {
+        Ast.Source source = new Parser(new Lexer("DEF main() DO RETURN 1 + 2; END").lexBuffer()).parseSource();
+        Path path = Files.createTempFile("ast", ".bin");
+        try {
+            try (OutputStream out = Files.newOutputStream(path)) {
+                FlatAst.of(source).write(out);
+            }
+            Assertions.assertEquals(BigInteger.valueOf(3), FlatAst.read(path).accept(new Interpreter(new Scope(null))).getValue());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void testSerializeVersion() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FlatAst.of(new Ast.Source(List.of(), List.of())).write(bytes);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        buffer.putInt(4, FlatAst.VERSION + 1);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> FlatAst.read(buffer));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> FlatAst.read(ByteBuffer.wrap(bytes.toByteArray(), 0, 10)));
+    }
+
+    @Test
+    void testSerializeCorrupt() throws IOException {
+        Ast.Source source = new Parser(new Lexer("LET x: Integer; DEF main(): Integer DO LET y: Decimal = 1.5; IF TRUE DO print(x); END RETURN 1 + 2; END").lexBuffer()).parseSource();
+        new Analyzer(new Scope(null)).visit(source);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FlatAst.of(source).write(bytes);
+        byte[] encoded = bytes.toByteArray();
+        for (int i = 8; i <= encoded.length - 4; i++) {
+            for (int value : new int[] {-2, -1, 0, 1, 2, 3, 14, encoded.length, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+                ByteBuffer buffer = ByteBuffer.wrap(encoded.clone());
+                buffer.putInt(i, value);
+                FlatAst flat;
+                try {
+                    flat = FlatAst.read(buffer);
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                flat.get(flat.getRoot()).toString(); // decodes every method body
+            }
+        }
+    }
+
+    private static String generate(Ast ast) {
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(ast);
+        return writer.toString();
+    }
+
+}
@@ -0,0 +1,87 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class InliningTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testInline(String test, String input, String expected) {
+        Ast.Source source = analyze(input);
+        Ast.Source inlined = new PassManager(List.of(new Inlining())).run(source).getSource();
+        Assertions.assertEquals(analyze(expected), inlined);
+        Assertions.assertEquals(new Interpreter(new Scope(null)).visit(source).getValue(),
+                new Interpreter(new Scope(null)).visit(inlined).getValue());
+    }
+
+    private static Stream<Arguments> testInline() {
+        return Stream.of(
+                Arguments.of("Expression",
+                        "DEF sq(x: Integer): Integer DO RETURN x * x; END DEF main(): Integer DO LET y = 2; RETURN sq(3) + sq(y); END",
+                        "DEF sq(x: Integer): Integer DO RETURN x * x; END DEF main(): Integer DO LET y = 2; RETURN 3 * 3 + y * y; END"),
+                Arguments.of("Argument Call",
+                        "DEF id(x: Integer): Integer DO RETURN x; END DEF main(): Integer DO RETURN id(id(4)); END",
+                        "DEF id(x: Integer): Integer DO RETURN x; END DEF main(): Integer DO LET x_1: Integer = 4; RETURN x_1; END"),
+                Arguments.of("Statements",
+                        "DEF add(a: Integer, b: Integer): Integer DO LET c = a + b; print(c); RETURN c; END " +
+                                "DEF main(): Integer DO LET x: Integer = add(1, 2); RETURN x; END",
+                        "DEF add(a: Integer, b: Integer): Integer DO LET c = a + b; print(c); RETURN c; END " +
+                                "DEF main(): Integer DO LET a_1: Integer = 1; LET b_1: Integer = 2; LET c_1 = a_1 + b_1; print(c_1); LET x: Integer = c_1; RETURN x; END"),
+                Arguments.of("Return",
+                        "DEF twice(a: Integer): Integer DO print(a); RETURN a + a; END DEF main(): Integer DO RETURN twice(2); END",
+                        "DEF twice(a: Integer): Integer DO print(a); RETURN a + a; END DEF main(): Integer DO LET a_1: Integer = 2; print(a_1); RETURN a_1 + a_1; END"),
+                Arguments.of("No Return",
+                        "DEF show(a: Integer) DO print(a); END DEF main(): Integer DO show(1); RETURN 0; END",
+                        "DEF show(a: Integer) DO print(a); END DEF main(): Integer DO LET a_1: Integer = 1; print(a_1); RETURN 0; END"),
+                Arguments.of("Ignored Value",
+                        "DEF sq(x: Integer): Integer DO RETURN x * x; END DEF main(): Integer DO sq(2); RETURN 0; END",
+                        "DEF sq(x: Integer): Integer DO RETURN x * x; END DEF main(): Integer DO LET x_1: Integer = 2; LET sq_1 = x_1 * x_1; RETURN 0; END")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testNotInlined(String test, String input) {
+        Ast.Source source = analyze(input);
+        Assertions.assertSame(source, new PassManager(List.of(new Inlining())).run(source).getSource());
+    }
+
+    private static Stream<Arguments> testNotInlined() {
+        return Stream.of(
+                Arguments.of("Recursive", "DEF r(n: Integer): Integer DO RETURN r(n); END DEF main(): Integer DO print(r(1)); RETURN 0; END"),
+                Arguments.of("Early Return", "DEF f(n: Integer): Integer DO IF n < 1 DO RETURN 0; END RETURN 1; END DEF main(): Integer DO RETURN f(1); END"),
+                Arguments.of("Shadowed Field", "LET count: Any; DEF get(): Any DO RETURN count; END DEF main(): Integer DO LET count = 1; print(get()); RETURN 0; END"),
+                Arguments.of("For Body", "DEF show(a: Integer) DO print(a); END DEF main(): Integer DO LET i = 0; FOR (i = 0; i < 2; i = i + 1) show(i); END RETURN 0; END")
+        );
+    }
+
+    @Test
+    void testBudget() {
+        Ast.Source source = analyze("DEF sq(x: Integer): Integer DO RETURN x * x; END DEF main(): Integer DO RETURN sq(3); END");
+        Assertions.assertSame(source, new PassManager(List.of(new Inlining(3))).run(source).getSource());
+        Assertions.assertNotSame(source, new PassManager(List.of(new Inlining(4))).run(source).getSource());
+    }
+
+    @Test
+    void testFolding() {
+        Ast.Source source = analyze("DEF sq(x: Integer): Integer DO RETURN x * x; END DEF main(): Integer DO RETURN sq(3) + sq(4); END");
+        PassManager.Result result = new PassManager(List.of(new Inlining(), new ConstantFolding(), new DeadCodeElimination())).run(source);
+        Assertions.assertEquals(analyze("DEF main(): Integer DO RETURN 25; END"), result.getSource());
+        Assertions.assertEquals(BigInteger.valueOf(25), new Interpreter(new Scope(null)).visit(result.getSource()).getValue());
+    }
+
+    private static Ast.Source analyze(String input) {
+        Ast.Source source = new Parser(new Lexer(input).lexBuffer()).parseSource();
+        new Analyzer(new Scope(null)).visit(source);
+        return source;
+    }
+
+}
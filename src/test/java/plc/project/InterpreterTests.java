@@ -729,6 +729,15 @@ final class InterpreterTests {
         test(new Ast.Source(Arrays.asList(), Arrays.asList()), BigInteger.ZERO, scope);
     }
 
+    @Test
+    void testDeepNesting() {
+        int depth = 200_000;
+        Ast.Expression chain = new Parser(new Lexer("1" + " + 1".repeat(depth)).lexBuffer()).parseExpression();
+        test(chain, BigInteger.valueOf(depth + 1), new Scope(null));
+        Ast.Expression groups = new Parser(new Lexer("(1 + ".repeat(depth) + "1" + ")".repeat(depth)).lexBuffer()).parseExpression();
+        test(groups, BigInteger.valueOf(depth + 1), new Scope(null));
+    }
+
     private static Scope test(Ast ast, Object expected, Scope scope) {
         Interpreter interpreter = new Interpreter(scope);
         if (expected != null) {
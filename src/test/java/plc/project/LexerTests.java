@@ -6,8 +6,17 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 public class LexerTests {
@@ -31,6 +40,76 @@ public class LexerTests {
         ), tokens);
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testReader(String test, String input, int bufferSize) {
+        List<Token> tokens = new ArrayList<>();
+        new Lexer(new Lexer.ReaderCharStream(new StringReader(input), bufferSize)).tokens().forEachRemaining(tokens::add);
+        Assertions.assertEquals(new Lexer(input).lex(), tokens);
+    }
+
+    private static Stream<Arguments> testReader() {
+        return Stream.of(
+                Arguments.of("Larger Buffer", "LET x = 5;", 64),
+                Arguments.of("Single Character Buffer", "DEF main(): Integer DO RETURN 0; END", 1),
+                Arguments.of("Token Longer Than Buffer", "print(\"Hello, World!\");", 4),
+                Arguments.of("Whitespace Across Refills", "one   \n\t  two", 2)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testMappedFile(String test, String input) throws IOException {
+        Path path = Files.createTempFile("lexer", ".plc");
+        try {
+            Files.write(path, input.getBytes(StandardCharsets.UTF_8));
+            Assertions.assertEquals(new Lexer(input).lex(), new Lexer(path).lex());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static Stream<Arguments> testMappedFile() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Method", "DEF main(): Integer DO RETURN 0; END"),
+                Arguments.of("Unicode String", "LET s = \"ρ★⚡\"; LET t = 1;")
+        );
+    }
+
+    @Test
+    void testMappedFileException() throws IOException {
+        Path path = Files.createTempFile("lexer", ".plc");
+        try {
+            Files.write(path, "LET s = \"★\nx\";".getBytes(StandardCharsets.UTF_8));
+            ParseException exception = Assertions.assertThrows(ParseException.class,
+                    () -> new Lexer(path).lex());
+            Assertions.assertEquals(11, exception.getIndex());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testBuffer(String test, String input) {
+        TokenBuffer buffer = new Lexer(input).lexBuffer();
+        List<Token> tokens = new Lexer(input).lex();
+        Assertions.assertEquals(tokens, buffer.asList());
+        for (int i = 0; i < tokens.size(); i++) {
+            Assertions.assertTrue(buffer.matches(i, tokens.get(i).getLiteral()));
+        }
+    }
+
+    private static Stream<Arguments> testBuffer() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Declaration", "LET x = 5;"),
+                Arguments.of("Method", "DEF main(): Integer DO print(\"Hello, World!\"); RETURN 0; END"),
+                Arguments.of("Literals", "'c' 1.5 -3 \"str\\n\" && ||")
+        );
+    }
+
     @ParameterizedTest
     @MethodSource
     void testIdentifier(String test, String input, boolean success) {
@@ -361,6 +440,191 @@ public class LexerTests {
         Assertions.assertEquals(13, exception.getIndex());
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testExceptionIndex(String test, String input, int index) {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer(input).lex());
+        Assertions.assertEquals(index, exception.getIndex());
+    }
+
+    private static Stream<Arguments> testExceptionIndex() {
+        return Stream.of(
+                Arguments.of("Leading Zero", "x 01", 3),
+                Arguments.of("Above Integer Max", "2147483648", 10),
+                Arguments.of("Above Decimal Precision", "9007199254740993.5", 18),
+                Arguments.of("Negative Zero", "-0.0", 4),
+                Arguments.of("Trailing Decimal", "1. ", 2),
+                Arguments.of("Invalid Escape", "\"a\\q\"", 3),
+                Arguments.of("Newline In String", "\"a\nb\"", 3),
+                Arguments.of("Lone Pipe", "|", 1),
+                Arguments.of("Unknown Character", "x ~", 2)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRelex(String test, String input, int offset, int removed, String inserted) {
+        TokenBuffer previous = new Lexer(input).lexBuffer();
+        String edited = input.substring(0, offset) + inserted + input.substring(offset + removed);
+        Assertions.assertEquals(new Lexer(edited).lex(), Lexer.relex(previous, offset, removed, inserted).asList());
+    }
+
+    private static Stream<Arguments> testRelex() {
+        return Stream.of(
+                Arguments.of("Insert Token", "LET x = 1;", 8, 0, "y + "),
+                Arguments.of("Extend Identifier", "LET x = 1;", 5, 0, "yz"),
+                Arguments.of("Join Tokens", "a b c", 1, 1, ""),
+                Arguments.of("Split Token", "abc + d", 1, 0, " "),
+                Arguments.of("Edit String", "x \"ab\" y", 4, 0, " y "),
+                Arguments.of("Operator Lookahead", "x = y", 3, 0, "="),
+                Arguments.of("Append", "x", 1, 0, " y z"),
+                Arguments.of("Remove All", "x y", 0, 3, ""),
+                Arguments.of("Shift Sign", "x --1 y - z", 0, 0, "  "),
+                Arguments.of("Sign Before Edit", "-1 -1 x yy", 6, 1, "-")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParallel(String test, String input, int chunkSize) {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Assertions.assertEquals(new Lexer(input).lex(), new Lexer(input).lexParallel(pool, chunkSize).asList());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Stream<Arguments> testParallel() {
+        return Stream.of(
+                Arguments.of("Lines", "LET x = 1;\nLET y = 2;\nLET z = x + y;\n", 4),
+                Arguments.of("Newline In Character", "LET c = 'a\n';\nprint(c);\n", 1),
+                Arguments.of("Quote In String", "print(\"'\");\nprint('\"');\nx\n", 2),
+                Arguments.of("Blank Lines", "\n\n\nx\n\n\ny\n\n", 1),
+                Arguments.of("Single Chunk", "LET x = 1;\n", 1024)
+        );
+    }
+
+    @Test
+    void testParallelException() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParseException exception = Assertions.assertThrows(ParseException.class,
+                    () -> new Lexer("x\ny\n\"a\nb\"\n~\n").lexParallel(pool, 1));
+            Assertions.assertEquals(7, exception.getIndex());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testValue(String test, String input, Number expected) {
+        Assertions.assertEquals(expected, new Lexer(input).lex().get(0).getValue());
+        Assertions.assertEquals(expected, new Lexer(input).lexBuffer().getValue(0));
+    }
+
+    private static Stream<Arguments> testValue() {
+        return Stream.of(
+                Arguments.of("Integer", "123", new BigInteger("123")),
+                Arguments.of("Negative Integer", "-188", new BigInteger("-188")),
+                Arguments.of("Positive Integer", "+100", new BigInteger("100")),
+                Arguments.of("Decimal", "123.456", new BigDecimal("123.456")),
+                Arguments.of("Trailing Zeros", "7.000", new BigDecimal("7.000")),
+                Arguments.of("Negative Decimal", "-0.5", new BigDecimal("-0.5")),
+                Arguments.of("Identifier", "abc", null)
+        );
+    }
+
+    @Test
+    void testValueOverflow() {
+        Token token = new Token(Token.Type.INTEGER, "123456789123456789123456789", 0);
+        Assertions.assertEquals(new BigInteger("123456789123456789123456789"), token.getValue());
+        Assertions.assertEquals(token.getValue(), TokenBuffer.of(Arrays.asList(token)).getValue(0));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testScanner(String test, int kind, String input) {
+        // The tests run with the vectorized scanner enabled, see build.gradle.kts
+        char[] chars = input.toCharArray();
+        for (int i = 0; i <= chars.length; i++) {
+            Assertions.assertEquals(new CharScanner().skip(kind, chars, i, chars.length),
+                    CharScanner.INSTANCE.skip(kind, chars, i, chars.length));
+        }
+    }
+
+    private static Stream<Arguments> testScanner() {
+        String identifier = "abcdefghijklmnopqrstuvwxyz_ABCDEFGHIJKLMNOPQRSTUVWXYZ-0123456789";
+        return Stream.of(
+                Arguments.of("Whitespace", CharScanner.WHITESPACE, " \t\r\n\b".repeat(20) + "x" + " ".repeat(70)),
+                Arguments.of("Identifier", CharScanner.IDENTIFIER, identifier + "@[`{/:" + identifier + "é" + identifier),
+                Arguments.of("String", CharScanner.STRING, "text 'in' a string ".repeat(5) + "\\n" + "x".repeat(40) + "\"" + "y".repeat(40) + "\n")
+        );
+    }
+
+    @Test
+    void testLongRuns() {
+        String identifier = "a".repeat(10_000);
+        String string = "\"" + "b".repeat(10_000) + "\"";
+        String input = identifier + " ".repeat(10_000) + string;
+        Assertions.assertEquals(List.of(
+                new Token(Token.Type.IDENTIFIER, identifier, 0),
+                new Token(Token.Type.STRING, string, 20_000)
+        ), new Lexer(input).lex());
+    }
+
+    @Test
+    void testLiteralView() {
+        Token token = new Lexer("x = \"text\";").lex().get(2);
+        Token expected = new Token(Token.Type.STRING, "\"text\"", 4);
+        Assertions.assertTrue(token.getLiteralView() instanceof SourceView);
+        Assertions.assertEquals(expected, token);
+        Assertions.assertEquals(expected.hashCode(), token.hashCode());
+        Assertions.assertEquals(new SourceView("\"text\"", 0, 6), token.getLiteralView());
+        Assertions.assertEquals("\"text\"".hashCode(), token.getLiteralView().hashCode());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testSymbols(String test, String input, int symbol) {
+        List<Token> tokens = new Lexer(input + " " + input).lexBuffer().asList();
+        Assertions.assertEquals(tokens.get(0).getSymbol(), tokens.get(1).getSymbol());
+        Assertions.assertSame(tokens.get(0).getLiteral(), tokens.get(1).getLiteral());
+        if (symbol != Symbols.NONE) {
+            Assertions.assertEquals(symbol, tokens.get(0).getSymbol());
+        }
+    }
+
+    private static Stream<Arguments> testSymbols() {
+        return Stream.of(
+                Arguments.of("Keyword", "LET", Symbols.LET),
+                Arguments.of("Literal Keyword", "NIL", Symbols.NIL),
+                Arguments.of("Identifier", "getName", Symbols.NONE),
+                Arguments.of("Lowercase Keyword", "let", Symbols.NONE)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testBinaryOperator(String test, String input, Token.Operator expected) {
+        Assertions.assertEquals(expected, new Lexer(input).lex().get(0).getOperator());
+        Assertions.assertEquals(expected, new Lexer(input).lexBuffer().getOperator(0));
+    }
+
+    private static Stream<Arguments> testBinaryOperator() {
+        return Stream.of(
+                Arguments.of("And", "&&", Token.Operator.AND),
+                Arguments.of("Less Equal", "<=", Token.Operator.LESS_EQUAL),
+                Arguments.of("Subtract", "-", Token.Operator.SUBTRACT),
+                Arguments.of("Divide", "/", Token.Operator.DIVIDE),
+                Arguments.of("Not Binary", "!", null),
+                Arguments.of("Compound", "&+", null),
+                Arguments.of("Not Operator", "x", null)
+        );
+    }
+
     /**
      * Tests that lexing the input through {@link Lexer#lexToken()} produces a
      * single token with the expected type and literal matching the input.
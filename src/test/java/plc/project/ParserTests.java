@@ -11,6 +11,7 @@ import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -989,6 +990,55 @@ final class ParserTests {
                                 new Ast.Expression.Access(Optional.empty(), "expr1"),
                                 new Ast.Expression.Access(Optional.empty(), "expr2")
                         )
+                ),
+                Arguments.of("Binary Precedence",
+                        Arrays.asList(
+                                // a || b + c * d == e - f
+                                new Token(Token.Type.IDENTIFIER, "a", 0),
+                                new Token(Token.Type.OPERATOR, "||", 2),
+                                new Token(Token.Type.IDENTIFIER, "b", 5),
+                                new Token(Token.Type.OPERATOR, "+", 7),
+                                new Token(Token.Type.IDENTIFIER, "c", 9),
+                                new Token(Token.Type.OPERATOR, "*", 11),
+                                new Token(Token.Type.IDENTIFIER, "d", 13),
+                                new Token(Token.Type.OPERATOR, "==", 15),
+                                new Token(Token.Type.IDENTIFIER, "e", 18),
+                                new Token(Token.Type.OPERATOR, "-", 20),
+                                new Token(Token.Type.IDENTIFIER, "f", 22)
+                        ),
+                        new Ast.Expression.Binary("||",
+                                new Ast.Expression.Access(Optional.empty(), "a"),
+                                new Ast.Expression.Binary("==",
+                                        new Ast.Expression.Binary("+",
+                                                new Ast.Expression.Access(Optional.empty(), "b"),
+                                                new Ast.Expression.Binary("*",
+                                                        new Ast.Expression.Access(Optional.empty(), "c"),
+                                                        new Ast.Expression.Access(Optional.empty(), "d")
+                                                )
+                                        ),
+                                        new Ast.Expression.Binary("-",
+                                                new Ast.Expression.Access(Optional.empty(), "e"),
+                                                new Ast.Expression.Access(Optional.empty(), "f")
+                                        )
+                                )
+                        )
+                ),
+                Arguments.of("Left Associative",
+                        Arrays.asList(
+                                // a - b - c
+                                new Token(Token.Type.IDENTIFIER, "a", 0),
+                                new Token(Token.Type.OPERATOR, "-", 2),
+                                new Token(Token.Type.IDENTIFIER, "b", 4),
+                                new Token(Token.Type.OPERATOR, "-", 6),
+                                new Token(Token.Type.IDENTIFIER, "c", 8)
+                        ),
+                        new Ast.Expression.Binary("-",
+                                new Ast.Expression.Binary("-",
+                                        new Ast.Expression.Access(Optional.empty(), "a"),
+                                        new Ast.Expression.Access(Optional.empty(), "b")
+                                ),
+                                new Ast.Expression.Access(Optional.empty(), "c")
+                        )
                 )
         );
     }
@@ -1276,6 +1326,180 @@ final class ParserTests {
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).
      */
+    @ParameterizedTest
+    @MethodSource
+    void testParallel(String test, String input, int chunkSize) {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Assertions.assertEquals(new Parser(new Lexer(input).lexBuffer()).parseSource(),
+                    new Parser(new Lexer(input).lexBuffer()).parseSourceParallel(pool, chunkSize));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Stream<Arguments> testParallel() {
+        return Stream.of(
+                Arguments.of("Methods", "DEF f() DO RETURN 1; END DEF g() DO RETURN 2; END DEF h() DO END", 1),
+                Arguments.of("Fields And Methods", "LET x = 1; DEF f() DO x = 2; END DEF g() DO f(); END", 2),
+                Arguments.of("Nested Blocks", "DEF f() DO IF x DO WHILE y DO END END END DEF g() DO FOR (i = 0; i < 1; i = i + 1) END END", 1),
+                Arguments.of("Keyword Variable", "DEF f() DO x = IF; END DEF g() DO END DEF h() DO END", 1),
+                Arguments.of("Single Chunk", "DEF f() DO END DEF g() DO END", 1024)
+        );
+    }
+
+    @Test
+    void testParallelException() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParseException exception = Assertions.assertThrows(ParseException.class,
+                    () -> new Parser(new Lexer("DEF f() DO x END DEF g() DO y; z END").lexBuffer()).parseSourceParallel(pool, 1));
+            Assertions.assertEquals(6, exception.getIndex());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testLazy(String test, String input) {
+        Ast.Source source = new Parser(new Lexer(input).lexBuffer()).parseSourceLazy();
+        for (Ast.Method method : source.getMethods()) {
+            Assertions.assertFalse(method.isParsed());
+        }
+        Assertions.assertEquals(new Parser(new Lexer(input).lexBuffer()).parseSource(), source);
+    }
+
+    private static Stream<Arguments> testLazy() {
+        return Stream.of(
+                Arguments.of("Methods", "LET x = 1; DEF f() DO RETURN 1; END DEF g(a: Integer): Integer DO RETURN a; END"),
+                Arguments.of("Nested Blocks", "DEF f() DO IF x DO WHILE y DO END ELSE z(); END END DEF g() DO END"),
+                Arguments.of("For", "DEF f() DO FOR (i = 0; i < f(1); i = i + 1) IF x DO END END END DEF g() DO END"),
+                Arguments.of("Keyword Names", "DEF f() DO x = IF; y(WHILE, END); END DEF g() DO END"),
+                Arguments.of("Assignment Parenthesis", "DEF main(): Integer DO LET x = 0; x = 1) IF TRUE DO print(1); END RETURN 0; END"),
+                Arguments.of("Assignment Semicolon Parenthesis", "DEF f() DO x = (1);) WHILE x DO END END DEF g() DO END")
+        );
+    }
+
+    @Test
+    void testLazyException() {
+        Ast.Source source = new Parser(new Lexer("DEF f() DO x = ; END DEF g() DO y; END").lexBuffer()).parseSourceLazy();
+        Assertions.assertEquals(List.of(new Ast.Statement.Expression(new Ast.Expression.Access(Optional.empty(), "y"))),
+                source.getMethods().get(1).getStatements());
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> source.getMethods().get(0).getStatements());
+        Assertions.assertEquals(7, exception.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testStream(String test, String input) {
+        Assertions.assertEquals(new Parser(new Lexer(input).lexBuffer()).parseSource(),
+                new Parser(new Lexer(input).tokens()).parseSource());
+    }
+
+    private static Stream<Arguments> testStream() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Fields And Methods", "LET x = 1; DEF f(a: Integer): Integer DO RETURN a + x; END"),
+                Arguments.of("Nested Blocks", "DEF f() DO IF x DO WHILE y DO END ELSE z(); END END DEF g() DO END"),
+                Arguments.of("For", "DEF f() DO FOR (i = 0; i < f(1); i = i + 1) obj.m(i); END END"),
+                Arguments.of("Groups", "LET x = ((1 + 2) * (3 - 4)) / 5;")
+        );
+    }
+
+    @Test
+    void testSymbols() {
+        Ast.Statement.Declaration declaration = new Parser(new Lexer("LET total = f(obj.count);").lexBuffer()).parseDeclarationStatement();
+        Ast.Expression.Function function = (Ast.Expression.Function) declaration.getValue().get();
+        Ast.Expression.Access access = (Ast.Expression.Access) function.getArguments().get(0);
+        Assertions.assertEquals(Symbols.intern("total"), declaration.getSymbol());
+        Assertions.assertEquals(Symbols.intern("f"), function.getSymbol());
+        Assertions.assertEquals(Symbols.intern("count"), access.getSymbol());
+        Assertions.assertEquals(Symbols.intern("obj"), ((Ast.Expression.Access) access.getReceiver().get()).getSymbol());
+    }
+
+    @Test
+    void testStreamException() {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer("DEF f() DO x = (1 + 2; END").tokens()).parseSource());
+        Assertions.assertEquals(21, exception.getIndex());
+    }
+
+    @Test
+    void testStreamLexException() {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer("DEF f() DO x; y = 'ab'; END").tokens()).parseSource());
+        Assertions.assertEquals(20, exception.getIndex());
+        exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer("DEF f() DO x y = 'ab'; END").tokens()).parseSource());
+        Assertions.assertEquals(6, exception.getIndex()); // the missing ; is reached before the invalid character
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIncremental(String test, String input, int offset, int removed, String inserted, int reused) {
+        IncrementalParser parser = new IncrementalParser();
+        TokenBuffer tokens = new Lexer(input).lexBuffer();
+        Ast.Source previous = parser.parse(tokens);
+        Ast.Source source = parser.parse(Lexer.relex(tokens, offset, removed, inserted));
+        String edited = input.substring(0, offset) + inserted + input.substring(offset + removed);
+        Assertions.assertEquals(new Parser(new Lexer(edited).lexBuffer()).parseSource(), source);
+        if (reused >= 0) {
+            Assertions.assertSame(previous.getMethods().get(reused), source.getMethods().get(reused));
+        }
+    }
+
+    private static Stream<Arguments> testIncremental() {
+        return Stream.of(
+                Arguments.of("Statement", "DEF f() DO x = 1; y = 2; END DEF g() DO z(); END", 15, 1, "3", 1),
+                Arguments.of("Nested Statement", "DEF f() DO IF a DO x = 1; END END DEF g() DO END", 23, 1, "a + b", 1),
+                Arguments.of("New Statement", "DEF f() DO END DEF g() DO x = 1; END", 26, 0, "y = 2; ", 0),
+                Arguments.of("Field", "LET x = 1; DEF f() DO END", 4, 1, "y", 0),
+                Arguments.of("New Method", "DEF f() DO END DEF g() DO END", 14, 0, " DEF h() DO END", -1),
+                Arguments.of("Whole Source", "LET x = 1; DEF f() DO END", 0, 11, "", -1)
+        );
+    }
+
+    @Test
+    void testIncrementalAnnotations() {
+        IncrementalParser parser = new IncrementalParser();
+        TokenBuffer tokens = new Lexer("DEF f() DO RETURN 1; END DEF g() DO RETURN 2; END").lexBuffer();
+        Ast.Source previous = parser.parse(tokens);
+        Ast.Statement.Return statement = (Ast.Statement.Return) previous.getMethods().get(1).getStatements().get(0);
+        ((Ast.Expression.Literal) statement.getValue()).setType(Environment.Type.INTEGER);
+        Ast.Source source = parser.parse(Lexer.relex(tokens, 18, 1, "3"));
+        Assertions.assertSame(statement, source.getMethods().get(1).getStatements().get(0));
+        Assertions.assertEquals(Environment.Type.INTEGER, statement.getValue().getType());
+    }
+
+    @Test
+    void testIncrementalException() {
+        IncrementalParser parser = new IncrementalParser();
+        TokenBuffer tokens = new Lexer("DEF f() DO x = 1; END").lexBuffer();
+        Ast.Source previous = parser.parse(tokens);
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> parser.parse(Lexer.relex(tokens, 16, 1, "")));
+        Assertions.assertEquals(8, exception.getIndex());
+        Assertions.assertSame(previous, parser.getSource());
+    }
+
+    @Test
+    void testDeepNesting() {
+        int depth = 200_000;
+        String chain = "x" + " + x".repeat(depth);
+        Ast.Expression expression = new Parser(new Lexer(chain).lexBuffer()).parseExpression();
+        for (int i = 0; i < depth; i++) {
+            Assertions.assertEquals("+", ((Ast.Expression.Binary) expression).getOperator());
+            expression = ((Ast.Expression.Binary) expression).getLeft();
+        }
+        Assertions.assertEquals(new Ast.Expression.Access(Optional.empty(), "x"), expression);
+
+        String groups = "(".repeat(depth) + "x" + ")".repeat(depth);
+        Assertions.assertEquals(new Parser(new Lexer(groups).lexBuffer()).parseExpression(),
+                new Parser(new Lexer(groups).lexBuffer()).parseExpression());
+    }
+
     private static <T extends Ast> void test(List<Token> tokens, T expected, Function<Parser, T> function) {
         Parser parser = new Parser(tokens);
         if (expected != null) {
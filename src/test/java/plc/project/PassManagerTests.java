@@ -0,0 +1,136 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.List;
+
+final class PassManagerTests {
+
+    @Test
+    void testUnchanged() {
+        Ast.Source source = analyze("DEF main(): Integer DO RETURN 1 + 2; END");
+        Pass pass = new Pass() {
+
+            @Override
+            public String getName() {
+                return "none";
+            }
+
+        };
+        PassManager.Result result = new PassManager(List.of(pass)).run(source);
+        Assertions.assertSame(source, result.getSource());
+        Assertions.assertEquals(1, result.getReports().size());
+        Assertions.assertEquals("none", result.getReports().get(0).getName());
+        Assertions.assertEquals(0, result.getReports().get(0).getChanges());
+    }
+
+    @Test
+    void testRewrite() {
+        Ast.Source source = analyze("DEF f(a: Integer, b: Integer): Integer DO RETURN a * b; END DEF main(): Integer DO RETURN 1 + f(1, 2); END");
+        PassManager.Result result = new PassManager(List.of(
+                new Increment("first", BigInteger.ONE),
+                new Increment("second", BigInteger.TWO)
+        )).run(source);
+        Assertions.assertEquals(List.of("first", "second"), result.getReports().stream().map(PassManager.Report::getName).toList());
+        Assertions.assertEquals(3, result.getReports().get(0).getChanges());
+        Assertions.assertEquals(3, result.getReports().get(1).getChanges());
+        Assertions.assertSame(source.getMethods().get(0), result.getSource().getMethods().get(0));
+        Assertions.assertEquals(BigInteger.valueOf(24), new Interpreter(new Scope(null)).visit(result.getSource()).getValue());
+        Assertions.assertEquals(BigInteger.valueOf(3), new Interpreter(new Scope(null)).visit(source).getValue());
+    }
+
+    @Test
+    void testVerifyType() {
+        Ast.Source source = analyze("DEF main(): Integer DO RETURN 1; END");
+        Pass pass = new Pass() {
+
+            @Override
+            public String getName() {
+                return "string";
+            }
+
+            @Override
+            public Ast visit(Ast.Expression.Literal ast) {
+                Ast.Expression.Literal literal = new Ast.Expression.Literal("1");
+                literal.setType(Environment.Type.STRING);
+                return changed(literal);
+            }
+
+        };
+        IllegalStateException exception = Assertions.assertThrows(IllegalStateException.class,
+                () -> new PassManager(List.of(pass)).run(source));
+        Assertions.assertTrue(exception.getMessage().contains("string"));
+        Assertions.assertDoesNotThrow(() -> new PassManager(List.of(pass), false).run(source));
+    }
+
+    @Test
+    void testVerifyAnnotation() {
+        Ast.Source source = analyze("DEF main(): Integer DO RETURN 1; END");
+        Pass pass = new Pass() {
+
+            @Override
+            public String getName() {
+                return "unannotated";
+            }
+
+            @Override
+            public Ast visit(Ast.Expression.Literal ast) {
+                return changed(new Ast.Expression.Literal(ast.getLiteral()));
+            }
+
+        };
+        Assertions.assertThrows(IllegalStateException.class, () -> new PassManager(List.of(pass)).run(source));
+    }
+
+    @Test
+    void testDeepNesting() {
+        int depth = 200_000;
+        Ast.Source source = analyze("DEF main(): Integer DO RETURN 0" + " + 1".repeat(depth) + "; END");
+        PassManager.Result result = new PassManager(List.of(new Increment("deep", BigInteger.ONE))).run(source);
+        Assertions.assertEquals(depth, result.getReports().get(0).getChanges());
+        Assertions.assertEquals(BigInteger.valueOf(2 * depth), new Interpreter(new Scope(null)).visit(result.getSource()).getValue());
+    }
+
+    private static Ast.Source analyze(String input) {
+        Ast.Source source = new Parser(new Lexer(input).lexBuffer()).parseSource();
+        new Analyzer(new Scope(null)).visit(source);
+        return source;
+    }
+
+    /**
+     * Adds an amount to every nonzero integer literal in main, leaving other
+     * methods alone.
+     */
+    private static final class Increment extends Pass {
+
+        private final String name;
+        private final BigInteger amount;
+
+        private Increment(String name, BigInteger amount) {
+            this.name = name;
+            this.amount = amount;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Ast visit(Ast.Method ast) {
+            return ast.getName().equals("main") ? super.visit(ast) : ast;
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Literal ast) {
+            if (!(ast.getLiteral() instanceof BigInteger) || ast.getLiteral().equals(BigInteger.ZERO)) {
+                return ast;
+            }
+            return changed(annotate(new Ast.Expression.Literal(((BigInteger) ast.getLiteral()).add(amount)), ast));
+        }
+
+    }
+
+}